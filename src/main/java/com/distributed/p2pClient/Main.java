@@ -1,9 +1,12 @@
 package com.distributed.p2pClient;
 
+import com.distributed.p2pFileTransfer.Configuration;
 import com.distributed.p2pFileTransfer.FileDownloadResult;
 import com.distributed.p2pFileTransfer.FileNotFoundException;
 import com.distributed.p2pFileTransfer.FreeNetFileTransferService;
 import com.distributed.p2pFileTransfer.QueryResult;
+import com.distributed.p2pFileTransfer.SearchResult;
+import com.distributed.p2pFileTransfer.SearchStrategy;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -15,6 +18,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -70,6 +74,9 @@ public class Main {
               System.lineSeparator(),
               "",
               "search   <filename> : Search the matching files in the Grid,",
+              "flood    <filename> : Search flooding the Grid up to the hop limit",
+              "ring     <filename> : Search with an expanding ring of hops",
+              "walk     <filename> : Search with random walkers",
               "download <filename> : Download the file from the Grid",
               "routes              : Print routing table of the node",
               "help                : Show help screen",
@@ -114,18 +121,41 @@ public class Main {
                     client.printRoutingTable();
                     break;
                 case "search":
+                case "flood":
+                case "ring":
+                case "walk":
                     long start = System.currentTimeMillis();
-                    Future<List<String>> queryResultFuture = client.searchForFile(fileName);
-                    List<String> queryResult = queryResultFuture.get();
-                    if (queryResult.size() != 0) {
-                        for(String name : queryResult) {
-                            System.out.println("----> " + name);
-                        }
+                    SearchStrategy strategy = Configuration.getSearchStrategy();
+                    if (command.equals("flood")) {
+                        strategy = SearchStrategy.FLOOD;
+                    } else if (command.equals("ring")) {
+                        strategy = SearchStrategy.EXPANDING_RING;
+                    } else if (command.equals("walk")) {
+                        strategy = SearchStrategy.RANDOM_WALK;
                     }
-                    else {
+                    AtomicLong firstResultTime = new AtomicLong(-1);
+                    Future<List<String>> queryResultFuture = client.searchForFile(fileName, strategy, name -> {
+                        firstResultTime.compareAndSet(-1, System.currentTimeMillis() - start);
+                        System.out.println("----> " + name);
+                    });
+                    List<String> queryResult = queryResultFuture.get();
+                    if (queryResult.size() == 0) {
                         System.out.println(">> No matching files found");
                     }
+                    if (queryResult instanceof SearchResult && !((SearchResult) queryResult).isComplete()) {
+                        SearchResult searchResult = (SearchResult) queryResult;
+                        if (searchResult.getAsked() < 0) {
+                            System.out.printf(">> %d nodes answered, nodes without matches do not answer%n",
+                                    searchResult.getAnswered());
+                        } else {
+                            System.out.printf(">> Partial result, %d of %d searches answered in time%n",
+                                    searchResult.getAnswered(), searchResult.getAsked());
+                        }
+                    }
                     long elapsedTime = System.currentTimeMillis() - start;
+                    if (firstResultTime.get() >= 0) {
+                        System.out.printf("First Result : %d ms, ", firstResultTime.get());
+                    }
                     System.out.printf("Elapsed Time : %d ms", elapsedTime);
                     break;
                 case "download":
@@ -154,7 +184,10 @@ public class Main {
                     long ser = client.getNumberOfQueriesReceived();
                     long fwd = client.getNumberOfQueriesDispatched();
                     long ans = client.getAnsweredQueryCount();
-                    System.out.printf("SER-%d FWD-%d ANS-%d%n", ser, fwd, ans);
+                    long hedged = client.getNumberOfQueriesHedged();
+                    System.out.printf("SER-%d FWD-%d ANS-%d HEDGED-%d%n", ser, fwd, ans, hedged);
+                    client.getPoolStats().forEach(System.out::println);
+                    client.getSearchStats().forEach(System.out::println);
                     break;
                 default:
                     System.out.println("Illegal command");
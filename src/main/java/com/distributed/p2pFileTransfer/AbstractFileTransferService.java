@@ -5,10 +5,17 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -21,20 +28,29 @@ public abstract class AbstractFileTransferService {
   private final CommandBuilder commandBuilder;
   private Node currentNode;
   private Thread queryListenerThread;
+  private Heartbeat heartbeat;
+  private final Map<SearchStrategy, SearchStats> searchStats = new EnumMap<>(SearchStrategy.class);
   protected  Logger logger;
 
   public AbstractFileTransferService(FileHandler fileHandler, int port, Node bootstrapServer)
       throws SocketException, UnknownHostException, NodeNotFoundException {
     this.fileHandler = fileHandler;
-    this.queryListener = new QueryListener(this, port);
+    this.queryListener = QueryListener.create(this, port);
     this.queryDispatcher = new QueryDispatcher(this);
     this.currentNode = new Node(port);
     this.commandBuilder = CommandBuilder.getInstance(currentNode);
+    for (SearchStrategy strategy : SearchStrategy.values()) {
+      searchStats.put(strategy, new SearchStats(strategy));
+    }
     queryListenerThread = new Thread(this.queryListener);
     queryListenerThread.start();
     this.network = new Network(this, bootstrapServer);
     logger = Logger.getLogger(this.getClass().getName());
     setLoggers(Paths.get(""));
+    if (Configuration.getHeartbeatInterval() > 0) {
+      heartbeat = new Heartbeat(this, Configuration.getHeartbeatInterval(), TimeUnit.MILLISECONDS);
+      heartbeat.start();
+    }
   }
 
   private void setLoggers(Path logDirectory) {
@@ -64,14 +80,60 @@ public abstract class AbstractFileTransferService {
 
   /**
    * Used to search for a file. This will flood the network and return all matching <b>unique</b>
-   * files. File is considered unique based on the file name
+   * files. File is considered unique based on the file name. The search returns the files found
+   * by the search deadline, the list is a {@link SearchResult} telling if every node answered
    *
    * @param query what to search for
    * @return list of files matching the search query
    */
   public abstract Future<List<String>> searchForFile(String query);
 
-  protected abstract Future<List<String>> searchForFileSkippingSource(String query, Node source);
+  /**
+   * Used to search for a file with a chosen strategy, see {@link SearchStrategy}
+   *
+   * @param query what to search for
+   * @param strategy how the search reaches the network
+   * @return list of files matching the search query
+   */
+  public abstract Future<List<String>> searchForFile(String query, SearchStrategy strategy);
+
+  /**
+   * Used to search for a file and get each matching file as soon as a node reports it. Each file
+   * is reported once. Cancelling the future stops the search and no more files are reported
+   *
+   * @param query what to search for
+   * @param strategy how the search reaches the network
+   * @param onFile called with each new matching file, on the thread that received the answer
+   * @return list of files matching the search query once the search is over
+   */
+  public abstract Future<List<String>> searchForFile(
+      String query, SearchStrategy strategy, Consumer<String> onFile);
+
+  /**
+   * Used to forward a search to the neighbours except the one it came from. No thread waits for
+   * the answers, the returned future completes when every neighbour answered or the timeout passed
+   *
+   * @param query what to search for
+   * @param source neighbour the search came from, null if the search started here
+   * @param hops number of times the search may still be forwarded, including this one
+   * @param searchId id of the search, kept on every hop so each node handles it once
+   * @param fanout number of neighbours to forward to, picked at random, 0 for every neighbour
+   * @param timeout milliseconds to wait for the neighbours, passed on as their budget
+   * @return list of files matching the search query
+   */
+  protected abstract CompletableFuture<List<String>> searchForFileSkippingSource(
+      String query, Node source, int hops, UUID searchId, int fanout, long timeout);
+
+  /**
+   * Used to forward a search answered directly to the neighbours except the one it came from,
+   * without waiting for anything back
+   *
+   * @param search search received, keeping the address of the node that started it
+   * @param source neighbour the search came from
+   * @param hops number of times the search may still be forwarded, including this one
+   * @param budget milliseconds the neighbours have to answer
+   */
+  protected abstract void forwardSearch(Message search, Node source, int hops, int budget);
 
   /**
    * Use to flood the network with a query and get the response
@@ -156,6 +218,14 @@ public abstract class AbstractFileTransferService {
     return this.queryDispatcher.getDispatchedCount();
   }
 
+  /**
+   * Use to get the number of queries sent again to a backup neighbour because the first was slow
+   * @return number of hedged queries
+   */
+  public long getNumberOfQueriesHedged(){
+    return this.queryDispatcher.getHedgedCount();
+  }
+
   /**
    * Print the number of search queries answered so far
    * @return
@@ -164,7 +234,40 @@ public abstract class AbstractFileTransferService {
     return this.queryListener.getAnsweredCount();
   }
 
+  /**
+   * Use to get the load of the worker pools of this node
+   * @return active, queued and rejected tasks of each pool
+   */
+  public List<PoolStats> getPoolStats(){
+    List<PoolStats> stats = new ArrayList<>(this.queryListener.getPoolStats());
+    stats.add(this.queryDispatcher.getPoolStats());
+    stats.add(this.fileHandler.getPoolStats());
+    stats.addAll(getServicePoolStats());
+    return stats;
+  }
+
+  /**
+   * Use to get the number of rounds and messages of the searches started by this node
+   * @return statistics of each search strategy
+   */
+  public List<SearchStats> getSearchStats(){
+    return new ArrayList<>(searchStats.values());
+  }
+
+  SearchStats getSearchStats(SearchStrategy strategy) {
+    return searchStats.get(strategy);
+  }
+
+  /**
+   * Use to get the load of the pools owned by the service implementation
+   * @return statistics of the pools of the service
+   */
+  protected abstract List<PoolStats> getServicePoolStats();
+
   void stop() {
+    if (heartbeat != null) {
+      heartbeat.stop();
+    }
     queryListener.stop();
     try {
       queryListenerThread.join();
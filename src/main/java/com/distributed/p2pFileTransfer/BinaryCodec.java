@@ -0,0 +1,325 @@
+package com.distributed.p2pFileTransfer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+class BinaryCodec {
+  /** Token appended to JOIN and JOINOK by nodes that accept binary messages */
+  static final String CAPABILITY = "BIN2";
+
+  private static final byte SER = (byte) 0x81;
+  private static final byte SEROK = (byte) 0x82;
+  private static final byte JOIN = (byte) 0x83;
+  private static final byte JOINOK = (byte) 0x84;
+  private static final byte LEAVE = (byte) 0x85;
+  private static final byte LEAVEOK = (byte) 0x86;
+  private static final int MAX_DATAGRAM_SIZE = 65507;
+  private static final ThreadLocal<ByteBuffer> ENCODE_BUFFER =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_DATAGRAM_SIZE));
+  private static final ThreadLocal<ByteBuffer> DECODE_BUFFER =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_DATAGRAM_SIZE));
+
+  /**
+   * Compact encoding of the messages exchanged between peers. A message is an opcode byte followed
+   * by its fields. Addresses are raw IP bytes prefixed by their length, ports are two bytes, query
+   * ids are the eight byte node prefix followed by the counter as a varint and numbers and string
+   * lengths are unsigned varints. File names are UTF-8 and keep their spaces. Opcodes have the high
+   * bit set so a binary message never starts like a text message, which always starts with its
+   * length in ASCII digits
+   */
+  private BinaryCodec() {}
+
+  /**
+   * Check if a message is in the binary format
+   *
+   * @param message received message, position at the start of the data
+   * @return true if the message is binary
+   */
+  static boolean isBinary(ByteBuffer message) {
+    return message.hasRemaining() && (message.get(message.position()) & 0x80) != 0;
+  }
+
+  /**
+   * Check if a text message advertises support for binary messages
+   *
+   * @param message received message
+   * @return true if the capability token is present
+   */
+  static boolean advertisesBinary(Message message) {
+    return message.hasToken(CAPABILITY);
+  }
+
+  /**
+   * Get the command of a received message, binary or text, without parsing it
+   *
+   * @param message received message, position at the start of the data
+   * @return command or null if the message has no known command
+   */
+  static Command peekCommand(ByteBuffer message) {
+    if (!isBinary(message)) {
+      return Command.peek(message);
+    }
+    switch (message.get(message.position())) {
+      case SER:
+        return Command.SER;
+      case SEROK:
+        return Command.SEROK;
+      case JOIN:
+        return Command.JOIN;
+      case JOINOK:
+        return Command.JOINOK;
+      case LEAVE:
+        return Command.LEAVE;
+      case LEAVEOK:
+        return Command.LEAVEOK;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Read a received message, binary or text
+   *
+   * @param message received message, position at the start of the data
+   * @return parsed message
+   */
+  static Message read(ByteBuffer message) {
+    if (isBinary(message)) {
+      return decode(message);
+    }
+    return Message.parse(message);
+  }
+
+  /**
+   * Encode a text message in the binary format. Messages advertising capabilities are left in the
+   * text format so the other node sees the advertisement
+   *
+   * @param message message in the text format
+   * @return encoded message or null if the message has no binary format
+   */
+  static byte[] encode(String message) {
+    Message parsed = Message.parse(message);
+    if (parsed.getCommand() == null || advertisesBinary(parsed)) {
+      return null;
+    }
+    ByteBuffer buffer = ENCODE_BUFFER.get();
+    buffer.clear();
+    try {
+      switch (parsed.getCommand()) {
+        case SER:
+          buffer.put(SER);
+          putAddress(buffer, parsed, 2);
+          putString(buffer, parsed.getSearchName());
+          putId(buffer, parsed.getQueryId());
+          if (parsed.getHops() >= 0) {
+            putVarint(buffer, parsed.getHops());
+            putId(buffer, parsed.getSearchId());
+            if (parsed.getFanout() > 0 || parsed.getBudget() >= 0) {
+              putVarint(buffer, parsed.getFanout());
+            }
+            if (parsed.getBudget() >= 0) {
+              putVarint(buffer, parsed.getBudget());
+            }
+            if (parsed.isDirectReply()) {
+              putVarint(buffer, 1);
+            }
+          }
+          break;
+        case SEROK:
+          buffer.put(SEROK);
+          List<String> files = parsed.getFileNames();
+          putVarint(buffer, parsed.isSearchFailure() ? parsed.getFileCount() : files.size());
+          putAddress(buffer, parsed, 3);
+          putId(buffer, parsed.getQueryId());
+          for (String file : files) {
+            putString(buffer, file);
+          }
+          break;
+        case JOIN:
+        case LEAVE:
+          buffer.put(parsed.getCommand() == Command.JOIN ? JOIN : LEAVE);
+          putAddress(buffer, parsed, 2);
+          break;
+        case JOINOK:
+        case LEAVEOK:
+          buffer.put(parsed.getCommand() == Command.JOINOK ? JOINOK : LEAVEOK);
+          putVarint(buffer, parsed.getInt(2));
+          break;
+        default:
+          return null;
+      }
+    } catch (UnknownHostException | BufferOverflowException | IllegalArgumentException e) {
+      return null;
+    }
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  /**
+   * Decode a binary message. The text form of the message is written straight from the binary
+   * fields, file names are copied byte for byte with spaces turned in to underscores
+   *
+   * @param message binary message, position at the opcode
+   * @return parsed message
+   * @throws IllegalArgumentException if the message is malformed
+   */
+  static Message decode(ByteBuffer message) {
+    ByteBuffer text = DECODE_BUFFER.get();
+    text.clear();
+    int start = CommandBuilder.begin(text, null);
+    try {
+      byte opcode = message.get();
+      switch (opcode) {
+        case SER:
+          Command.SER.writeTo(text);
+          text.put((byte) ' ');
+          copyAddress(message, text);
+          text.put((byte) ' ').put((byte) '"');
+          copyString(message, text);
+          text.put((byte) '"').put((byte) ' ');
+          CommandBuilder.putId(text, getId(message));
+          if (message.hasRemaining()) {
+            text.put((byte) ' ');
+            CommandBuilder.putDecimal(text, getVarint(message));
+            text.put((byte) ' ');
+            CommandBuilder.putId(text, getId(message));
+            while (message.hasRemaining()) {
+              text.put((byte) ' ');
+              CommandBuilder.putDecimal(text, getVarint(message));
+            }
+          }
+          break;
+        case SEROK:
+          {
+            int fileCount = getVarint(message);
+            Command.SEROK.writeTo(text);
+            text.put((byte) ' ');
+            CommandBuilder.putDecimal(text, fileCount);
+            text.put((byte) ' ');
+            copyAddress(message, text);
+            text.put((byte) ' ');
+            CommandBuilder.putId(text, getId(message));
+            int files = fileCount >= CommandBuilder.SEARCH_ERROR ? 0 : fileCount;
+            for (int i = 0; i < files; i++) {
+              text.put((byte) ' ');
+              copyString(message, text);
+            }
+            break;
+          }
+        case JOIN:
+        case LEAVE:
+          (opcode == JOIN ? Command.JOIN : Command.LEAVE).writeTo(text);
+          text.put((byte) ' ');
+          copyAddress(message, text);
+          break;
+        case JOINOK:
+        case LEAVEOK:
+          (opcode == JOINOK ? Command.JOINOK : Command.LEAVEOK).writeTo(text);
+          text.put((byte) ' ');
+          CommandBuilder.putDecimal(text, getVarint(message));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown opcode " + (opcode & 0xFF));
+      }
+    } catch (BufferUnderflowException | UnknownHostException e) {
+      throw new IllegalArgumentException("Malformed binary message", e);
+    } catch (BufferOverflowException e) {
+      throw new IllegalArgumentException("Binary message too long for the text format", e);
+    }
+    CommandBuilder.finish(text, start);
+    return Message.wrap(Arrays.copyOf(text.array(), text.position()));
+  }
+
+  private static void putAddress(ByteBuffer buffer, Message message, int field)
+      throws UnknownHostException {
+    Node node = message.getNode(field);
+    byte[] address = node.getIpAddress().getAddress();
+    buffer.put((byte) address.length);
+    buffer.put(address);
+    buffer.putShort((short) node.getPort());
+  }
+
+  /** Copy an address as ip and port separated by a space */
+  private static void copyAddress(ByteBuffer buffer, ByteBuffer text)
+      throws UnknownHostException {
+    int length = buffer.get();
+    if (length == 4) {
+      for (int i = 0; i < 4; i++) {
+        if (i > 0) {
+          text.put((byte) '.');
+        }
+        CommandBuilder.putDecimal(text, buffer.get() & 0xFF);
+      }
+    } else if (length == 16) {
+      byte[] address = new byte[length];
+      buffer.get(address);
+      CommandBuilder.putUtf8(text, InetAddress.getByAddress(address).getHostAddress(), false);
+    } else {
+      throw new IllegalArgumentException("Invalid address length " + length);
+    }
+    text.put((byte) ' ');
+    CommandBuilder.putDecimal(text, buffer.getShort() & 0xFFFF);
+  }
+
+  private static void putId(ByteBuffer buffer, UUID id) {
+    buffer.putLong(id.getMostSignificantBits());
+    putVarint(buffer, id.getLeastSignificantBits());
+  }
+
+  private static UUID getId(ByteBuffer buffer) {
+    long nodePrefix = buffer.getLong();
+    return new UUID(nodePrefix, getVarlong(buffer));
+  }
+
+  private static void putString(ByteBuffer buffer, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    putVarint(buffer, bytes.length);
+    buffer.put(bytes);
+  }
+
+  /** Copy a string with spaces replaced by underscores */
+  private static void copyString(ByteBuffer buffer, ByteBuffer text) {
+    int length = getVarint(buffer);
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    for (int i = 0; i < length; i++) {
+      byte b = buffer.get();
+      text.put(b == ' ' ? (byte) '_' : b);
+    }
+  }
+
+  static void putVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static int getVarint(ByteBuffer buffer) {
+    long value = getVarlong(buffer);
+    if (value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Varint too large");
+    }
+    return (int) value;
+  }
+
+  static long getVarlong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+}
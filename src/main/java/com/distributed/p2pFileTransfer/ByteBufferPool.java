@@ -0,0 +1,52 @@
+package com.distributed.p2pFileTransfer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+class ByteBufferPool {
+  private final BlockingQueue<ByteBuffer> buffers;
+  private final int bufferSize;
+  private final boolean direct;
+
+  /**
+   * Pool of reusable byte buffers. Buffers are allocated lazily and at most capacity buffers are
+   * kept for reuse, extra buffers released to a full pool are left to the garbage collector
+   *
+   * @param bufferSize size of each buffer in bytes
+   * @param capacity maximum number of idle buffers kept in the pool
+   * @param direct whether to allocate direct buffers
+   */
+  ByteBufferPool(int bufferSize, int capacity, boolean direct) {
+    this.bufferSize = bufferSize;
+    this.direct = direct;
+    this.buffers = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * Get a cleared buffer from the pool, allocating a new one if the pool is empty
+   *
+   * @return buffer ready to be written to
+   */
+  ByteBuffer acquire() {
+    ByteBuffer buffer = buffers.poll();
+    if (buffer == null) {
+      buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+    return buffer;
+  }
+
+  /**
+   * Return a buffer to the pool. The buffer must not be used by the caller afterwards
+   *
+   * @param buffer buffer previously acquired from this pool
+   */
+  void release(ByteBuffer buffer) {
+    buffer.clear();
+    buffers.offer(buffer);
+  }
+
+  int getIdleCount() {
+    return buffers.size();
+  }
+}
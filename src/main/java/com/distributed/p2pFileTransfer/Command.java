@@ -0,0 +1,136 @@
+package com.distributed.p2pFileTransfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+enum Command {
+  SER,
+  SEROK,
+  JOIN,
+  JOINOK,
+  LEAVE,
+  LEAVEOK,
+  REG,
+  REGOK,
+  UNREG,
+  UNROK, // check and change this to UNREGOK if needed
+  PING,
+  PONG;
+
+  private static final Command[] VALUES = values();
+  private final byte[] name = name().getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * Get the command a node answers this command with
+   *
+   * @return response command or null if this command is not answered
+   */
+  Command getResponse() {
+    switch (this) {
+      case SER:
+        return SEROK;
+      case JOIN:
+        return JOINOK;
+      case LEAVE:
+        return LEAVEOK;
+      case REG:
+        return REGOK;
+      case UNREG:
+        return UNROK;
+      case PING:
+        return PONG;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Write the name of the command
+   *
+   * @param buffer buffer to write to
+   */
+  void writeTo(ByteBuffer buffer) {
+    buffer.put(name);
+  }
+
+  /**
+   * Resolve the command stored in a range of bytes without creating a string
+   *
+   * @param data bytes holding the command
+   * @param offset start of the command
+   * @param length length of the command
+   * @return command or null if the bytes do not name a command
+   */
+  static Command lookup(byte[] data, int offset, int length) {
+    for (Command command : VALUES) {
+      if (command.matches(data, offset, length)) {
+        return command;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the command of a message in the text format
+   *
+   * @param message message according to the problem description
+   * @return command or null if the message has no known command
+   */
+  static Command of(String message) {
+    if (message.length() < 6) {
+      return null;
+    }
+    int end = message.indexOf(' ', 5);
+    int length = (end < 0 ? message.length() : end) - 5;
+    for (Command command : VALUES) {
+      if (command.name.length == length && message.startsWith(command.name(), 5)) {
+        return command;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the command of a text message without parsing it
+   *
+   * @param message message in the text format, position at the length prefix
+   * @return command or null if the message has no known command
+   */
+  static Command peek(ByteBuffer message) {
+    int start = message.position() + 5;
+    int end = start;
+    while (end < message.limit() && message.get(end) != ' ') {
+      end++;
+    }
+    for (Command command : VALUES) {
+      if (command.matches(message, start, end - start)) {
+        return command;
+      }
+    }
+    return null;
+  }
+
+  private boolean matches(ByteBuffer message, int offset, int length) {
+    if (name.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (message.get(offset + i) != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matches(byte[] data, int offset, int length) {
+    if (name.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (data[offset + i] != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -1,15 +1,29 @@
 package com.distributed.p2pFileTransfer;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class CommandBuilder {
+  static final String ID_PLACEHOLDER = "<id>";
+  /** File count of a search answer from a node that could not handle the search */
+  static final int SEARCH_ERROR = 9998;
+  private static final int MAX_MESSAGE_SIZE = 65507;
+  private static final byte[] ID_PLACEHOLDER_BYTES =
+      ID_PLACEHOLDER.getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] EMPTY_PREFIX = "0000 ".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final ThreadLocal<ByteBuffer> BUFFER =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_MESSAGE_SIZE));
   Node currentNode;
+  private final byte[] address;
   static Map<Node, CommandBuilder> instances = new HashMap<>();
 
   private CommandBuilder(Node node) {
     currentNode = node;
+    address =
+        (node.getIpAddress().getHostAddress() + " " + node.getPort())
+            .getBytes(StandardCharsets.US_ASCII);
   }
 
   /**
@@ -35,14 +49,96 @@ public class CommandBuilder {
    * @return file search string
    */
   public String getSearchCommand(String fileName) {
-    assert !Pattern.matches(".*<id>.*", fileName);
-    String body =
-        String.format("SER %s %d \"%s\" <id>", currentIp(), currentNode.getPort(), fileName.replaceAll(" ", "_"));
-    return composeWithLength(body);
+    assert !fileName.contains(ID_PLACEHOLDER);
+    ByteBuffer buffer = buffer();
+    writeSearchCommand(buffer, fileName, null);
+    return text(buffer);
   }
 
-  private String currentIp() {
-    return currentNode.getIpAddress().toString().split("/")[1];
+  /**
+   * Get file search string limited to a number of hops
+   *
+   * @param fileName name of the file to search
+   * @param hops number of times the search may still be forwarded
+   * @param searchId id of the search, kept when the search is forwarded
+   * @return file search string
+   */
+  public String getSearchCommand(String fileName, int hops, UUID searchId) {
+    return getSearchCommand(fileName, hops, searchId, 0);
+  }
+
+  /**
+   * Get file search string limited to a number of hops and forwarded to some of the neighbours
+   *
+   * @param fileName name of the file to search
+   * @param hops number of times the search may still be forwarded
+   * @param searchId id of the search, kept when the search is forwarded
+   * @param fanout number of neighbours each node forwards the search to, 0 for every neighbour
+   * @return file search string
+   */
+  public String getSearchCommand(String fileName, int hops, UUID searchId, int fanout) {
+    return getSearchCommand(fileName, hops, searchId, fanout, -1);
+  }
+
+  /**
+   * Get file search string that must be answered within a time budget
+   *
+   * @param fileName name of the file to search
+   * @param hops number of times the search may still be forwarded
+   * @param searchId id of the search, kept when the search is forwarded
+   * @param fanout number of neighbours each node forwards the search to, 0 for every neighbour
+   * @param budget milliseconds the receiver has to answer, -1 for no budget
+   * @return file search string
+   */
+  public String getSearchCommand(
+      String fileName, int hops, UUID searchId, int fanout, int budget) {
+    return getSearchCommand(fileName, hops, searchId, fanout, budget, false);
+  }
+
+  /**
+   * Get file search string that must be answered within a time budget
+   *
+   * @param fileName name of the file to search
+   * @param hops number of times the search may still be forwarded
+   * @param searchId id of the search, kept when the search is forwarded
+   * @param fanout number of neighbours each node forwards the search to, 0 for every neighbour
+   * @param budget milliseconds the receiver has to answer, -1 for no budget
+   * @param direct true if nodes with matching files answer this node directly, answering with the
+   *     search id, instead of through the nodes that forwarded the search
+   * @return file search string
+   */
+  public String getSearchCommand(
+      String fileName, int hops, UUID searchId, int fanout, int budget, boolean direct) {
+    assert !fileName.contains(ID_PLACEHOLDER);
+    ByteBuffer buffer = buffer();
+    writeSearchCommand(buffer, address, fileName, null, hops, searchId, fanout, budget, direct);
+    return text(buffer);
+  }
+
+  /**
+   * Get the search string a node forwards on behalf of the node that started a search answered
+   * directly. The address of the node that started the search is kept so answers go straight to it
+   *
+   * @param search search received
+   * @param hops number of times the search may still be forwarded
+   * @param budget milliseconds the receiver has to answer
+   * @return file search string
+   */
+  String getForwardedSearchCommand(Message search, int hops, int budget) {
+    ByteBuffer buffer = buffer();
+    byte[] origin =
+        (search.getString(2) + " " + search.getString(3)).getBytes(StandardCharsets.US_ASCII);
+    writeSearchCommand(
+        buffer,
+        origin,
+        search.getSearchName(),
+        null,
+        hops,
+        search.getSearchId(),
+        search.getFanout(),
+        budget,
+        search.isDirectReply());
+    return text(buffer);
   }
 
   /**
@@ -52,21 +148,57 @@ public class CommandBuilder {
    * @return file search success string
    */
   public String getSearchOkCommand(List<String> files, UUID queryId) {
-    List<String> transformedFileNames =
-        files.stream().map(fileName -> fileName.replaceAll(" ", "_")).collect(Collectors.toList());
-    StringBuilder builder =
-        new StringBuilder(
-            String.format(
-                "SEROK %d %s %d %s", files.size(), currentIp(), currentNode.getPort(), queryId));
-    for (String file : transformedFileNames) {
-      builder.append(String.format(" %s", file));
-    }
-    String message = builder.toString().trim();
-    return composeWithLength(message);
+    ByteBuffer buffer = buffer();
+    writeSearchOkCommand(buffer, files, queryId);
+    return text(buffer);
   }
 
-  private String composeWithLength(String body) {
-    return String.format("%04d %s", body.length() + 5, body);
+  /**
+   * Get the answer to a search this node is too busy to handle
+   *
+   * @param queryId id of the search
+   * @return file search failure string
+   */
+  public String getSearchBusyCommand(UUID queryId) {
+    ByteBuffer buffer = buffer();
+    int start = begin(buffer, Command.SEROK);
+    putDecimal(buffer, SEARCH_ERROR);
+    buffer.put((byte) ' ').put(address).put((byte) ' ');
+    putId(buffer, queryId);
+    finish(buffer, start);
+    return text(buffer);
+  }
+
+  static String composeWithLength(String body) {
+    StringBuilder builder = new StringBuilder(body.length() + 5);
+    appendLength(builder, body.length() + 5);
+    return builder.append(' ').append(body).toString();
+  }
+
+  /**
+   * Fill in the query id of a message built with an id placeholder. The length prefix is updated
+   * to cover the id
+   *
+   * @param message message according to the problem description
+   * @param queryId id of the query
+   * @return message carrying the id, or the message itself if it has no placeholder
+   */
+  static String withQueryId(String message, UUID queryId) {
+    int placeholder = message.indexOf(ID_PLACEHOLDER);
+    int bodyStart = message.indexOf(' ') + 1;
+    if (placeholder < 0 || bodyStart == 0) {
+      return message;
+    }
+    String id = queryId.toString();
+    int bodyLength = message.length() - bodyStart - ID_PLACEHOLDER.length() + id.length();
+    StringBuilder builder = new StringBuilder(bodyLength + 5);
+    appendLength(builder, bodyLength + 5);
+    return builder
+        .append(' ')
+        .append(message, bodyStart, placeholder)
+        .append(id)
+        .append(message, placeholder + ID_PLACEHOLDER.length(), message.length())
+        .toString();
   }
 
   /**
@@ -75,8 +207,19 @@ public class CommandBuilder {
    * @return join string
    */
   public String getJoinCommand() {
-    String body = String.format("JOIN %s %d", currentIp(), currentNode.getPort());
-    return composeWithLength(body);
+    return getJoinCommand(false);
+  }
+
+  /**
+   * Get join string, optionally advertising that this node accepts binary messages
+   *
+   * @param binaryCodec whether to advertise the binary codec
+   * @return join string
+   */
+  public String getJoinCommand(boolean binaryCodec) {
+    ByteBuffer buffer = buffer();
+    writeJoinCommand(buffer, binaryCodec);
+    return text(buffer);
   }
 
   /**
@@ -86,8 +229,20 @@ public class CommandBuilder {
    * @return join message
    */
   public String getJoinOkCommand(int value) {
-    String body = String.format("JOINOK %d", value);
-    return composeWithLength(body);
+    return getJoinOkCommand(value, false);
+  }
+
+  /**
+   * Get join ok message, optionally advertising that this node accepts binary messages
+   *
+   * @param value 0 sucess 9999 failure
+   * @param binaryCodec whether to advertise the binary codec
+   * @return join message
+   */
+  public String getJoinOkCommand(int value, boolean binaryCodec) {
+    ByteBuffer buffer = buffer();
+    writeJoinOkCommand(buffer, value, binaryCodec);
+    return text(buffer);
   }
 
   /**
@@ -105,8 +260,9 @@ public class CommandBuilder {
    * @return Leave messages
    */
   public String getLeaveCommand() {
-    String body = String.format("LEAVE %s %d", currentIp(), currentNode.getPort());
-    return composeWithLength(body);
+    ByteBuffer buffer = buffer();
+    writeLeaveCommand(buffer);
+    return text(buffer);
   }
 
   /**
@@ -116,8 +272,9 @@ public class CommandBuilder {
    * @return Leave message
    */
   public String getLeaveOkCommand(int value) {
-    String body = String.format("LEAVEOK %d", value);
-    return composeWithLength(body);
+    ByteBuffer buffer = buffer();
+    writeLeaveOkCommand(buffer, value);
+    return text(buffer);
   }
 
   /**
@@ -129,6 +286,28 @@ public class CommandBuilder {
     return getLeaveOkCommand(0);
   }
 
+  /**
+   * Get heartbeat message, sent to a neighbour not heard from for a while
+   *
+   * @return Ping message
+   */
+  public String getPingCommand() {
+    ByteBuffer buffer = buffer();
+    writeHeartbeat(buffer, Command.PING);
+    return text(buffer);
+  }
+
+  /**
+   * Get heartbeat answer message
+   *
+   * @return Pong message
+   */
+  public String getPongCommand() {
+    ByteBuffer buffer = buffer();
+    writeHeartbeat(buffer, Command.PONG);
+    return text(buffer);
+  }
+
   /**
    * Get register message
    *
@@ -136,8 +315,9 @@ public class CommandBuilder {
    * @return Register message for the username
    */
   public String getRegisterCommand(String userName) {
-    String body = String.format("REG %s %d %s", currentIp(), currentNode.getPort(), userName);
-    return composeWithLength(body);
+    ByteBuffer buffer = buffer();
+    writeRegistration(buffer, Command.REG, userName);
+    return text(buffer);
   }
 
   /**
@@ -147,7 +327,287 @@ public class CommandBuilder {
    * @return Unregister message for the username
    */
   public String getUnRegisterCommand(String userName) {
-    String body = String.format("UNREG %s %d %s", currentIp(), currentNode.getPort(), userName);
-    return composeWithLength(body);
+    ByteBuffer buffer = buffer();
+    writeRegistration(buffer, Command.UNREG, userName);
+    return text(buffer);
+  }
+
+  /**
+   * Write a file search message in to a buffer
+   *
+   * @param buffer buffer to write to, the message is written at its position
+   * @param fileName name of the file to search
+   * @param queryId id written in to the message, or null to write the id placeholder
+   */
+  void writeSearchCommand(ByteBuffer buffer, String fileName, UUID queryId) {
+    writeSearchCommand(buffer, address, fileName, queryId, -1, null, 0, -1, false);
+  }
+
+  /**
+   * Write a file search message limited to a number of hops in to a buffer. The query id stays the
+   * sixth field as in the original format, the hops, search id, fanout, budget and reply mode are
+   * appended after it so nodes that do not know them read the query id where they expect it
+   *
+   * @param buffer buffer to write to, the message is written at its position
+   * @param origin address and port of the node that started the search
+   * @param fileName name of the file to search
+   * @param queryId id written in to the message, or null to write the id placeholder
+   * @param hops number of times the search may still be forwarded
+   * @param searchId id of the search, or null to leave out the hops and search id
+   * @param fanout number of neighbours each node forwards the search to, 0 to forward to every
+   *     neighbour. Left out when 0 and there is no budget
+   * @param budget milliseconds the receiver has to answer, -1 to leave it out
+   * @param direct true to have matches answered directly, needs a budget
+   */
+  private void writeSearchCommand(
+      ByteBuffer buffer,
+      byte[] origin,
+      String fileName,
+      UUID queryId,
+      int hops,
+      UUID searchId,
+      int fanout,
+      int budget,
+      boolean direct) {
+    assert !direct || budget >= 0;
+    int start = begin(buffer, Command.SER);
+    buffer.put(origin).put((byte) ' ').put((byte) '"');
+    putUtf8(buffer, fileName, true);
+    buffer.put((byte) '"').put((byte) ' ');
+    if (queryId == null) {
+      buffer.put(ID_PLACEHOLDER_BYTES);
+    } else {
+      putId(buffer, queryId);
+    }
+    if (searchId != null) {
+      buffer.put((byte) ' ');
+      putDecimal(buffer, hops);
+      buffer.put((byte) ' ');
+      putId(buffer, searchId);
+      if (fanout > 0 || budget >= 0) {
+        buffer.put((byte) ' ');
+        putDecimal(buffer, fanout);
+      }
+      if (budget >= 0) {
+        buffer.put((byte) ' ');
+        putDecimal(buffer, budget);
+      }
+      if (direct) {
+        buffer.put((byte) ' ').put((byte) '1');
+      }
+    }
+    finish(buffer, start);
+  }
+
+  /**
+   * Write a file search success message in to a buffer. File names are written one by one, no
+   * intermediate copies of the names are made
+   *
+   * @param buffer buffer to write to, the message is written at its position
+   * @param files names of the files matching the search query
+   * @param queryId id of the query answered
+   */
+  void writeSearchOkCommand(ByteBuffer buffer, Collection<String> files, UUID queryId) {
+    int start = begin(buffer, Command.SEROK);
+    putDecimal(buffer, files.size());
+    buffer.put((byte) ' ').put(address).put((byte) ' ');
+    putId(buffer, queryId);
+    for (String file : files) {
+      buffer.put((byte) ' ');
+      putUtf8(buffer, file, true);
+    }
+    finish(buffer, start);
+  }
+
+  void writeJoinCommand(ByteBuffer buffer, boolean binaryCodec) {
+    int start = begin(buffer, Command.JOIN);
+    buffer.put(address);
+    if (binaryCodec) {
+      buffer.put((byte) ' ');
+      putUtf8(buffer, BinaryCodec.CAPABILITY, false);
+    }
+    finish(buffer, start);
+  }
+
+  void writeJoinOkCommand(ByteBuffer buffer, int value, boolean binaryCodec) {
+    int start = begin(buffer, Command.JOINOK);
+    putDecimal(buffer, value);
+    if (binaryCodec) {
+      buffer.put((byte) ' ');
+      putUtf8(buffer, BinaryCodec.CAPABILITY, false);
+    }
+    finish(buffer, start);
+  }
+
+  void writeLeaveCommand(ByteBuffer buffer) {
+    int start = begin(buffer, Command.LEAVE);
+    buffer.put(address);
+    finish(buffer, start);
+  }
+
+  void writeLeaveOkCommand(ByteBuffer buffer, int value) {
+    int start = begin(buffer, Command.LEAVEOK);
+    putDecimal(buffer, value);
+    finish(buffer, start);
+  }
+
+  void writeHeartbeat(ByteBuffer buffer, Command command) {
+    int start = begin(buffer, command);
+    buffer.put(address);
+    finish(buffer, start);
+  }
+
+  private void writeRegistration(ByteBuffer buffer, Command command, String userName) {
+    int start = begin(buffer, command);
+    buffer.put(address).put((byte) ' ');
+    putUtf8(buffer, userName, false);
+    finish(buffer, start);
+  }
+
+  private static ByteBuffer buffer() {
+    ByteBuffer buffer = BUFFER.get();
+    buffer.clear();
+    return buffer;
+  }
+
+  private static String text(ByteBuffer buffer) {
+    return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Start a message by leaving room for the length prefix
+   *
+   * @param buffer buffer to write to
+   * @param command command of the message, null to write only the prefix
+   * @return position of the message in the buffer
+   */
+  static int begin(ByteBuffer buffer, Command command) {
+    int start = buffer.position();
+    buffer.put(EMPTY_PREFIX);
+    if (command != null) {
+      command.writeTo(buffer);
+      buffer.put((byte) ' ');
+    }
+    return start;
+  }
+
+  /**
+   * Fill in the length prefix of a message once its body is written. The length is counted in
+   * characters, as composeWithLength does, and takes a fifth digit if it does not fit in four
+   *
+   * @param buffer buffer holding the message, position at the end of the message
+   * @param start position of the message in the buffer
+   */
+  static void finish(ByteBuffer buffer, int start) {
+    int end = buffer.position();
+    int length = 5;
+    for (int i = start + 5; i < end; i++) {
+      byte b = buffer.get(i);
+      if ((b & 0xC0) != 0x80) {
+        length++;
+      }
+      if ((b & 0xF8) == 0xF0) {
+        length++; // a surrogate pair in a string
+      }
+    }
+    int digits = 4;
+    if (length > 9999) {
+      buffer.put((byte) 0);
+      for (int i = end; i > start + 4; i--) {
+        buffer.put(i, buffer.get(i - 1));
+      }
+      digits = 5;
+    }
+    for (int i = start + digits - 1; i >= start; i--) {
+      buffer.put(i, (byte) ('0' + length % 10));
+      length /= 10;
+    }
+  }
+
+  private static void appendLength(StringBuilder builder, int length) {
+    for (int limit = 1000; limit > 1 && length < limit; limit /= 10) {
+      builder.append('0');
+    }
+    builder.append(length);
+  }
+
+  /**
+   * Write a string as UTF-8
+   *
+   * @param buffer buffer to write to
+   * @param value string to write
+   * @param underscoreSpaces whether spaces are written as underscores, as file names are
+   */
+  static void putUtf8(ByteBuffer buffer, CharSequence value, boolean underscoreSpaces) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer.put((byte) (underscoreSpaces && c == ' ' ? '_' : c));
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer
+            .put((byte) (0xF0 | codePoint >> 18))
+            .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+            .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+            .put((byte) (0x80 | codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer
+            .put((byte) (0xE0 | c >> 12))
+            .put((byte) (0x80 | c >> 6 & 0x3F))
+            .put((byte) (0x80 | c & 0x3F));
+      }
+    }
+  }
+
+  /**
+   * Write a number in decimal
+   *
+   * @param buffer buffer to write to
+   * @param value number to write
+   */
+  static void putDecimal(ByteBuffer buffer, long value) {
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    long divisor = 1;
+    while (divisor <= value / 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      buffer.put((byte) ('0' + value / divisor % 10));
+    }
+  }
+
+  /**
+   * Write a query id in the canonical text form of a UUID
+   *
+   * @param buffer buffer to write to
+   * @param queryId id to write
+   */
+  static void putId(ByteBuffer buffer, UUID queryId) {
+    long mostSignificantBits = queryId.getMostSignificantBits();
+    long leastSignificantBits = queryId.getLeastSignificantBits();
+    putHex(buffer, mostSignificantBits >>> 32, 8);
+    buffer.put((byte) '-');
+    putHex(buffer, mostSignificantBits >>> 16, 4);
+    buffer.put((byte) '-');
+    putHex(buffer, mostSignificantBits, 4);
+    buffer.put((byte) '-');
+    putHex(buffer, leastSignificantBits >>> 48, 4);
+    buffer.put((byte) '-');
+    putHex(buffer, leastSignificantBits, 12);
+  }
+
+  private static void putHex(ByteBuffer buffer, long value, int digits) {
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+      buffer.put(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+    }
   }
 }
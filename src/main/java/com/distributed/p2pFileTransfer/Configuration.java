@@ -1,5 +1,7 @@
 package com.distributed.p2pFileTransfer;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class Configuration {
@@ -9,6 +11,41 @@ public class Configuration {
     private static long cacheSize;
     private static String bootstrapServerIp;
     private static String bootstrapServerport;
+    private static String queryListener = "blocking";
+    private static int bufferPoolSize = 64;
+    private static boolean directBuffers = false;
+    private static long responseTimeout = 30000;
+    private static boolean asyncExecutors = false;
+    private static int maxRetransmissions = 3;
+    private static boolean coalescing = false;
+    private static long coalescingWindow = 2000;
+    private static int coalescingMaxSize = 1472;
+    private static boolean binaryCodec = true;
+    private static String threadMode = "bounded";
+    private static int threadPoolSize = 64;
+    private static int threadQueueSize = 1024;
+    private static int listenerShards = Runtime.getRuntime().availableProcessors();
+    private static int searchHops = 4;
+    private static long searchDeadline = 20000;
+    private static long searchHopMargin = 250;
+    private static boolean directReplies = false;
+    private static SearchStrategy searchStrategy = SearchStrategy.FLOOD;
+    private static int ringMinResults = 1;
+    private static int walkers = 4;
+    private static int walkHops = 8;
+    private static int walkRounds = 3;
+    private static int walkMinResults = 1;
+    private static long searchSeenWindow = 60000;
+    private static double rateLimit = 0;
+    private static int hedgeBudget = 0;
+    private static long heartbeatInterval = 0;
+    private static double phiSuspect = 8;
+    private static double phiDead = 16;
+    private static Map<Command, Double> rateLimits = new EnumMap<>(Command.class);
+
+    static {
+        rateLimits.put(Command.SER, 100.0);
+    }
 
     public static void setConfiguration(Properties configuration){
         cacheDir = configuration.getProperty("cache_dir");
@@ -17,6 +54,54 @@ public class Configuration {
         port = configuration.getProperty("port");
         bootstrapServerIp = configuration.getProperty("boostrap_server_ip");
         bootstrapServerport = configuration.getProperty("boostrap_server_port");
+        queryListener = configuration.getProperty("query_listener", "blocking");
+        bufferPoolSize = Integer.parseInt(configuration.getProperty("buffer_pool_size", "64"));
+        directBuffers = Boolean.parseBoolean(configuration.getProperty("direct_buffers", "false"));
+        responseTimeout = Long.parseLong(configuration.getProperty("response_timeout", "30000"));
+        asyncExecutors = "async".equals(configuration.getProperty("executor_mode", "blocking"));
+        maxRetransmissions = Integer.parseInt(configuration.getProperty("max_retransmissions", "3"));
+        coalescing = Boolean.parseBoolean(configuration.getProperty("coalescing", "false"));
+        coalescingWindow = Long.parseLong(configuration.getProperty("coalescing_window", "2000"));
+        coalescingMaxSize = Integer.parseInt(configuration.getProperty("coalescing_max_size", "1472"));
+        binaryCodec = Boolean.parseBoolean(configuration.getProperty("binary_codec", "true"));
+        threadMode = configuration.getProperty("thread_mode", "bounded");
+        threadPoolSize = Integer.parseInt(configuration.getProperty("thread_pool_size", "64"));
+        threadQueueSize = Integer.parseInt(configuration.getProperty("thread_queue_size", "1024"));
+        listenerShards = Integer.parseInt(configuration.getProperty("listener_shards",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        searchHops = Integer.parseInt(configuration.getProperty("search_hops", "4"));
+        searchDeadline = Long.parseLong(configuration.getProperty("search_deadline", "20000"));
+        searchHopMargin = Long.parseLong(configuration.getProperty("search_hop_margin", "250"));
+        directReplies = "direct".equals(configuration.getProperty("search_replies", "relay"));
+        switch (configuration.getProperty("search_strategy", "flood")) {
+            case "ring":
+                searchStrategy = SearchStrategy.EXPANDING_RING;
+                break;
+            case "walk":
+                searchStrategy = SearchStrategy.RANDOM_WALK;
+                break;
+            default:
+                searchStrategy = SearchStrategy.FLOOD;
+        }
+        ringMinResults = Integer.parseInt(configuration.getProperty("ring_min_results", "1"));
+        walkers = Integer.parseInt(configuration.getProperty("walkers", "4"));
+        walkHops = Integer.parseInt(configuration.getProperty("walk_hops", "8"));
+        walkRounds = Integer.parseInt(configuration.getProperty("walk_rounds", "3"));
+        walkMinResults = Integer.parseInt(configuration.getProperty("walk_min_results", "1"));
+        searchSeenWindow = Long.parseLong(configuration.getProperty("search_seen_window", "60000"));
+        rateLimit = Double.parseDouble(configuration.getProperty("rate_limit", "0"));
+        hedgeBudget = Integer.parseInt(configuration.getProperty("hedge_budget", "0"));
+        heartbeatInterval = Long.parseLong(configuration.getProperty("heartbeat_interval", "0"));
+        phiSuspect = Double.parseDouble(configuration.getProperty("phi_suspect", "8"));
+        phiDead = Double.parseDouble(configuration.getProperty("phi_dead", "16"));
+        rateLimits = new EnumMap<>(Command.class);
+        for (Command command : Command.values()) {
+            String value = configuration.getProperty("rate_limit_" + command.name().toLowerCase(),
+                    command == Command.SER ? "100" : null);
+            if (value != null) {
+                rateLimits.put(command, Double.parseDouble(value));
+            }
+        }
     }
 
     public static String getPort() {
@@ -42,4 +127,128 @@ public class Configuration {
     public static String getBootstrapServerport() {
         return bootstrapServerport;
     }
+
+    public static String getQueryListener() {
+        return queryListener;
+    }
+
+    public static int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public static boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    public static long getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    public static boolean isAsyncExecutors() {
+        return asyncExecutors;
+    }
+
+    public static int getMaxRetransmissions() {
+        return maxRetransmissions;
+    }
+
+    public static boolean isCoalescing() {
+        return coalescing;
+    }
+
+    public static long getCoalescingWindow() {
+        return coalescingWindow;
+    }
+
+    public static int getCoalescingMaxSize() {
+        return coalescingMaxSize;
+    }
+
+    public static boolean isBinaryCodec() {
+        return binaryCodec;
+    }
+
+    public static String getThreadMode() {
+        return threadMode;
+    }
+
+    public static int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    public static int getThreadQueueSize() {
+        return threadQueueSize;
+    }
+
+    public static int getListenerShards() {
+        return listenerShards;
+    }
+
+    public static int getSearchHops() {
+        return searchHops;
+    }
+
+    public static long getSearchDeadline() {
+        return searchDeadline;
+    }
+
+    public static boolean isDirectReplies() {
+        return directReplies;
+    }
+
+    public static long getSearchHopMargin() {
+        return searchHopMargin;
+    }
+
+    public static SearchStrategy getSearchStrategy() {
+        return searchStrategy;
+    }
+
+    public static int getRingMinResults() {
+        return ringMinResults;
+    }
+
+    public static int getWalkers() {
+        return walkers;
+    }
+
+    public static int getWalkHops() {
+        return walkHops;
+    }
+
+    public static int getWalkRounds() {
+        return walkRounds;
+    }
+
+    public static int getWalkMinResults() {
+        return walkMinResults;
+    }
+
+    public static long getSearchSeenWindow() {
+        return searchSeenWindow;
+    }
+
+    public static double getRateLimit() {
+        return rateLimit;
+    }
+
+    public static int getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    public static long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public static double getPhiSuspect() {
+        return phiSuspect;
+    }
+
+    public static double getPhiDead() {
+        return phiDead;
+    }
+
+    static Map<Command, Double> getRateLimits() {
+        return rateLimits;
+    }
 }
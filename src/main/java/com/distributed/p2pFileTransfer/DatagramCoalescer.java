@@ -0,0 +1,240 @@
+package com.distributed.p2pFileTransfer;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class DatagramCoalescer {
+  private static final byte[] MAGIC = "BTCH".getBytes(StandardCharsets.US_ASCII);
+  private static final Set<Command> COALESCED_COMMANDS =
+      EnumSet.of(
+          Command.SER,
+          Command.SEROK,
+          Command.JOIN,
+          Command.JOINOK,
+          Command.LEAVE,
+          Command.LEAVEOK,
+          Command.PING,
+          Command.PONG);
+  private final DatagramSocket socket;
+  private final HashedTimerWheel timerWheel;
+  private final long flushWindow;
+  private final int maxBatchSize;
+  private final ConcurrentHashMap<Node, Batch> batches = new ConcurrentHashMap<>();
+  private final Logger logger;
+  private long datagramsSent = 0;
+  private long messagesSent = 0;
+
+  /**
+   * Combines messages sent to the same node within a short window in to a single datagram. A
+   * batch is sent when the window of its first message passes or when the next message would
+   * make it larger than the maximum size. A batch holding a single message is sent as a plain
+   * message. Only messages between peers are combined, messages to the bootstrap server are never
+   * delayed
+   *
+   * @param socket socket to send batches on
+   * @param flushWindow longest time a message waits for others to the same node
+   * @param unit unit of flushWindow
+   * @param maxBatchSize maximum size of a batch datagram in bytes
+   */
+  DatagramCoalescer(DatagramSocket socket, long flushWindow, TimeUnit unit, int maxBatchSize) {
+    this.socket = socket;
+    this.flushWindow = unit.toNanos(flushWindow);
+    this.maxBatchSize = maxBatchSize;
+    this.timerWheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 64, "datagram-coalescer");
+    this.logger = Logger.getLogger(this.getClass().getName());
+  }
+
+  /**
+   * Check if a message may be delayed and combined with others
+   *
+   * @param command command of the message
+   * @return true for messages exchanged between peers
+   */
+  static boolean accepts(Command command) {
+    return command != null && COALESCED_COMMANDS.contains(command);
+  }
+
+  /**
+   * Queue a message to a node. The message is sent directly if it does not fit in a batch
+   *
+   * @param data encoded message
+   * @param destination node to send the message to
+   * @throws IOException if a datagram could not be sent
+   */
+  void send(byte[] data, Node destination) throws IOException {
+    if (MAGIC.length + 2 + data.length > maxBatchSize) {
+      Executor.send(socket, data, data.length, destination);
+      count(1, 1);
+      return;
+    }
+    while (true) {
+      Batch batch = batches.computeIfAbsent(destination, Batch::new);
+      synchronized (batch) {
+        // the batch was dropped after its window passed, the next one is taken from the map
+        if (batch.dropped) {
+          continue;
+        }
+        if (batch.size + 2 + data.length > maxBatchSize) {
+          batch.flush();
+        }
+        batch.messages.add(data);
+        batch.size += 2 + data.length;
+        if (batch.messages.size() == 1) {
+          timerWheel.schedule(batch::expire, flushWindow, TimeUnit.NANOSECONDS);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Check if a datagram holds a batch of messages
+   *
+   * @param datagram received datagram, position at the start of the data
+   * @return true if the datagram is a batch
+   */
+  static boolean isBatch(ByteBuffer datagram) {
+    if (datagram.remaining() < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (datagram.get(datagram.position() + i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Split a received datagram in to the messages it holds. A datagram that is not a batch holds a
+   * single message. Binary messages are decoded
+   *
+   * @param datagram received datagram, position at the start of the data
+   * @return parsed messages in the order they were sent
+   */
+  static List<Message> unpack(ByteBuffer datagram) {
+    return unpack(datagram, command -> true);
+  }
+
+  /**
+   * Split a received datagram in to the messages it holds, skipping messages which are not
+   * admitted. The command of each message is checked before the message is parsed
+   *
+   * @param datagram received datagram, position at the start of the data
+   * @param admission decides from the command whether a message is parsed or dropped
+   * @return parsed messages in the order they were sent
+   */
+  static List<Message> unpack(ByteBuffer datagram, Predicate<Command> admission) {
+    List<Message> messages = new ArrayList<>();
+    if (!isBatch(datagram)) {
+      if (admission.test(BinaryCodec.peekCommand(datagram))) {
+        messages.add(BinaryCodec.read(datagram));
+      }
+      return messages;
+    }
+    datagram.position(datagram.position() + MAGIC.length);
+    while (datagram.remaining() >= 2) {
+      int length = datagram.getShort() & 0xFFFF;
+      if (length > datagram.remaining()) {
+        break;
+      }
+      ByteBuffer message = datagram.slice();
+      message.limit(length);
+      if (admission.test(BinaryCodec.peekCommand(message))) {
+        messages.add(BinaryCodec.read(message));
+      }
+      datagram.position(datagram.position() + length);
+    }
+    return messages;
+  }
+
+  private synchronized void count(long datagrams, long messages) {
+    datagramsSent += datagrams;
+    messagesSent += messages;
+  }
+
+  synchronized long getDatagramsSent() {
+    return datagramsSent;
+  }
+
+  synchronized long getMessagesSent() {
+    return messagesSent;
+  }
+
+  /** @return number of nodes with a batch waiting for its window to pass */
+  int getPendingBatches() {
+    return batches.size();
+  }
+
+  void stop() {
+    batches.values().forEach(Batch::flushQuietly);
+    timerWheel.stop();
+  }
+
+  private class Batch {
+    final Node destination;
+    final List<byte[]> messages = new ArrayList<>();
+    final ByteBuffer frame = ByteBuffer.allocate(maxBatchSize);
+    int size = MAGIC.length;
+    boolean dropped = false;
+
+    Batch(Node destination) {
+      this.destination = destination;
+    }
+
+    /** Send the queued messages. Caller must hold the lock of the batch */
+    void flush() throws IOException {
+      if (messages.isEmpty()) {
+        return;
+      }
+      int count = messages.size();
+      try {
+        if (count == 1) {
+          byte[] data = messages.get(0);
+          Executor.send(socket, data, data.length, destination);
+        } else {
+          frame.clear();
+          frame.put(MAGIC);
+          for (byte[] data : messages) {
+            frame.putShort((short) data.length);
+            frame.put(data);
+          }
+          Executor.send(socket, frame.array(), frame.position(), destination);
+        }
+        count(1, count);
+      } finally {
+        messages.clear();
+        size = MAGIC.length;
+      }
+    }
+
+    /**
+     * Send the queued messages once the window passed and drop the batch, so nodes no longer sent
+     * to do not keep a batch. The next message to the node starts a new batch
+     */
+    synchronized void expire() {
+      flushQuietly();
+      dropped = true;
+      batches.remove(destination, this);
+    }
+
+    synchronized void flushQuietly() {
+      try {
+        flush();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, String.format("Failed to send batch to %s: %s", destination, e));
+      }
+    }
+  }
+}
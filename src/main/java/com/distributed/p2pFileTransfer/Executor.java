@@ -3,15 +3,20 @@ package com.distributed.p2pFileTransfer;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 public abstract class Executor implements Callable<QueryResult> {
   final Logger logger;
@@ -30,62 +35,209 @@ public abstract class Executor implements Callable<QueryResult> {
     logger = Logger.getLogger(Executor.class.getName());
   }
 
-  public abstract void notify(String message);
+  public abstract void notify(Message message);
+
+  /**
+   * Called by the query listener when the executor waited longer than the response timeout
+   * without receiving a response
+   */
+  void expire() {
+    logger.log(Level.WARNING, String.format("No response received for query %s", query.id));
+  }
+
+  /**
+   * Send the query to its destination. Messages between peers go through the coalescer of the
+   * query listener when coalescing is enabled and are binary encoded if the destination
+   * negotiated the binary codec
+   *
+   * @throws IOException if sending failed
+   */
+  void send() throws IOException {
+    byte[] data = null;
+    if (queryListener.isBinaryPeer(destination)) {
+      data = BinaryCodec.encode(query.body);
+    }
+    if (data == null) {
+      data = query.body.getBytes(StandardCharsets.UTF_8);
+    }
+    DatagramCoalescer coalescer = queryListener.getCoalescer();
+    if (coalescer != null && DatagramCoalescer.accepts(query.command)) {
+      coalescer.send(data, destination);
+    } else {
+      send(socket, data, data.length, destination);
+    }
+  }
+
+  /**
+   * Send a datagram on a socket. If the socket belongs to a channel the datagram is written to the
+   * channel since channel sockets in non blocking mode can not send directly
+   *
+   * @param socket socket to send on
+   * @param data buffer holding the datagram
+   * @param length length of the datagram
+   * @param destination node to send to
+   * @throws IOException if sending failed
+   */
+  static void send(DatagramSocket socket, byte[] data, int length, Node destination)
+      throws IOException {
+    DatagramChannel channel = socket.getChannel();
+    if (channel != null) {
+      if (channel.send(ByteBuffer.wrap(data, 0, length), destination.getSocketAddress()) == 0) {
+        throw new IOException("Channel send buffer full");
+      }
+    } else {
+      socket.send(new DatagramPacket(data, length, destination.getSocketAddress()));
+    }
+  }
 }
 
 class AcknowledgedQueryExecutor extends Executor {
 
-  private final Object monitor = new Object();
-  private String response;
-  private boolean responseReceived = false;
-  private String expectedResponseHeader;
+  private final CompletableFuture<QueryResult> result = new CompletableFuture<>();
+  private final Command expectedResponse;
+  private final boolean correlatedById;
+  private volatile HashedTimerWheel.Timeout deadline;
+  private volatile HashedTimerWheel.Timeout retransmission;
+  private volatile long sentAt;
+  private volatile long retransmitUntil = Long.MAX_VALUE;
+  private volatile int transmissions = 0;
 
   public AcknowledgedQueryExecutor(
       Query query, DatagramSocket socket, QueryListener queryListener) {
     super(query, socket, queryListener);
-    expectedResponseHeader = String.format("%sOK",query.body.split(" ")[1]);
-    if(expectedResponseHeader.equals("UNREGOK")){
-      expectedResponseHeader = "UNROK"; // change this to UNREGOK if needed
-    }
+    expectedResponse = query.command == null ? null : query.command.getResponse();
+    correlatedById = expectedResponse == Command.SEROK;
+    result.whenComplete((queryResult, e) -> release());
   }
 
   @Override
-  public void notify(String message) {
-    String responseHeader = message.split(" ")[1];
-    if (!responseHeader.equals(expectedResponseHeader)){
+  public void notify(Message message) {
+    if (message.getCommand() != expectedResponse) {
       return;
     }
-    response = message;
-    responseReceived = true;
     logger.log(Level.INFO, String.format("Message received %s for query %s", message, query.id));
-    synchronized (monitor) {
-      monitor.notifyAll();
+    // searches are answered after the neighbour searched the network, not a network round trip
+    if (transmissions == 1 && !correlatedById && !result.isDone()) {
+      queryListener.getRttEstimator(destination).sample(System.nanoTime() - sentAt);
     }
-    queryListener.unRegisterForResponse(destination, this);
+    complete(new QueryResult(message, 0, query));
   }
 
   @Override
-  public QueryResult call() {
-    byte[] data = query.body.getBytes(StandardCharsets.UTF_8);
-    DatagramPacket sendDatagram =
-        new DatagramPacket(data, data.length, query.destination.getSocketAddress());
-    queryListener.registerForResponse(query.destination, this);
+  void expire() {
+    super.expire();
+    complete(new QueryResult("No response received", 3, query));
+  }
+
+  /**
+   * Stop waiting for the response. The query is no longer sent again and a response arriving later
+   * is ignored
+   */
+  void cancel() {
+    result.cancel(false);
+  }
+
+  private void complete(QueryResult queryResult) {
+    result.complete(queryResult);
+  }
+
+  /** Called once the result is set or the query cancelled */
+  private void release() {
+    unRegister();
+    if (deadline != null) {
+      deadline.cancel();
+    }
+    if (retransmission != null) {
+      retransmission.cancel();
+    }
+  }
+
+  private void register() {
+    if (correlatedById) {
+      queryListener.registerForResponse(query.id, this);
+    } else {
+      queryListener.registerForResponse(destination, this);
+    }
+  }
+
+  private void unRegister() {
+    if (correlatedById) {
+      queryListener.unRegisterForResponse(query.id);
+    } else {
+      queryListener.unRegisterForResponse(destination, this);
+    }
+  }
+
+  /**
+   * Send the query without waiting for the response. The returned future completes from the query
+   * listener when the response arrives, or with state 3 when the deadline passes. No thread is
+   * held while waiting. Cancelling the future cancels the query. The query is sent again with
+   * exponential backoff starting from the retransmit timeout of the destination until a response
+   * arrives or the retransmission limit is reached. A search is not sent again once the budget it
+   * carries would have run out, since its sender stops waiting then. Copies reaching the neighbour
+   * while it is still searching are dropped by its replay cache
+   *
+   * @param timeout time to wait for the response
+   * @param unit unit of timeout
+   * @return future resolving to the result of the query
+   */
+  CompletableFuture<QueryResult> callAsync(long timeout, TimeUnit unit) {
+    register();
+    if (result.isDone()) {
+      // cancelled before it was sent, the release on cancel may have run before registering
+      release();
+      return result;
+    }
+    deadline = queryListener.getTimerWheel().schedule(this::expire, timeout, unit);
+    if (correlatedById) {
+      int budget = Message.parse(query.body).getBudget();
+      if (budget >= 0) {
+        retransmitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+      }
+    }
+    transmit(queryListener.getRttEstimator(destination).getRetransmitTimeout(TimeUnit.NANOSECONDS));
+    return result;
+  }
+
+  private void transmit(long retransmitTimeout) {
+    if (result.isDone()) {
+      return;
+    }
+    if (transmissions > 0) {
+      logger.log(
+          Level.INFO, String.format("Retransmitting query %s to %s", query.id, destination));
+    }
+    sentAt = System.nanoTime();
+    transmissions++;
     try {
-      socket.send(sendDatagram);
+      send();
     } catch (IOException e) {
-      return new QueryResult(String.format("Failed to send message due to : %s", e), 1, query);
+      complete(new QueryResult(String.format("Failed to send message due to : %s", e), 1, query));
+      return;
     }
-    while (!responseReceived) {
-      synchronized (monitor) {
-        try {
-          monitor.wait();
-        } catch (InterruptedException e) {
-          return new QueryResult(String.format("Failed to send message due to : %s", e), 2, query);
-        }
+    if (transmissions <= Configuration.getMaxRetransmissions()
+        && sentAt + retransmitTimeout - retransmitUntil < 0) {
+      long next = Math.min(retransmitTimeout * 2, RttEstimator.MAX_RTO);
+      retransmission =
+          queryListener
+              .getTimerWheel()
+              .schedule(() -> transmit(next), retransmitTimeout, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public QueryResult call() {
+    callAsync(Configuration.getResponseTimeout(), TimeUnit.MILLISECONDS);
+    try {
+      QueryResult queryResult = result.get();
+      if (queryResult.getState() == 0) {
+        logger.log(Level.INFO, String.format("Query %s handled successfully", query.id));
       }
+      return queryResult;
+    } catch (InterruptedException | ExecutionException | CancellationException e) {
+      complete(new QueryResult(String.format("Failed to send message due to : %s", e), 2, query));
+      return new QueryResult(String.format("Failed to send message due to : %s", e), 2, query);
     }
-    logger.log(Level.INFO, String.format("Query %s handled successfully", query.id));
-    return new QueryResult(response, 0, query);
   }
 }
 
@@ -97,38 +249,33 @@ class FileSearchQueryExecutor extends AcknowledgedQueryExecutor {
       Query query, DatagramSocket socket, QueryListener queryListener, FileHandler fileHandler) {
     super(query, socket, queryListener);
     this.fileHandler = fileHandler;
-    this.fileName = query.body.split(" ")[4].replaceAll("\"", "");
+    this.fileName = Message.parse(query.body).getSearchName();
   }
 
   @Override
-  public void notify(String message) {
-    String[] data = message.split(" ");
-    String command = data[1];
-    String id = data[5];
-    if (command.equals("SEROK") && id.equals(query.id.toString())) {
-      int numberOfFiles = Integer.parseInt(data[2]);
-      if (numberOfFiles > 0) {
+  public void notify(Message message) {
+    if (message.getCommand() == Command.SEROK && query.id.equals(message.getQueryId())) {
+      if (!message.isSearchFailure() && message.getFileCount() > 0) {
         try {
-          Node source = new Node(InetAddress.getByName(data[3]), Integer.parseInt(data[4]));
-          Stream.of(data)
-              .skip(6)
-              .forEach(
-                  fileName -> {
-                    try {
-                      Future<FileDownloadResult> future =  fileHandler.downloadFileToCache(source, fileName.replaceAll("_", " "));
-                      if (fileName.equals(this.fileName)){
-                        future.get();
-                      }
-                    } catch (NullPointerException ignored) {
-
-                    } catch (InterruptedException | ExecutionException e) {
-                      logger.log(Level.SEVERE, e.toString());
-                    }
-                  });
+          Node source = message.getSender();
+          for (String fileName : message.getFileNames()) {
+            try {
+              Future<FileDownloadResult> future = fileHandler.downloadFileToCache(source, fileName);
+              if (fileName.equals(this.fileName)) {
+                future.get();
+              }
+            } catch (NullPointerException ignored) {
+
+            } catch (InterruptedException | ExecutionException e) {
+              logger.log(Level.SEVERE, e.toString());
+            }
+          }
         } catch (UnknownHostException e) {
           logger.log(
               Level.WARNING,
-              String.format("Failed to get Inet address ipAddress: %s port: %s", data[3], data[4]));
+              String.format(
+                  "Failed to get Inet address ipAddress: %s port: %s",
+                  message.getString(3), message.getString(4)));
         }
       }
       super.notify(message);
@@ -142,6 +289,47 @@ class FileSearchQueryExecutor extends AcknowledgedQueryExecutor {
   }
 }
 
+class DirectSearchCollector extends Executor {
+  private final UUID searchId;
+  private final Consumer<QueryResult> onResult;
+
+  /**
+   * Collects the answers to a search answered directly. Nodes anywhere in the network that have
+   * matching files answer with the search id as the query id, so one collector registered under
+   * the search id receives every answer until it is closed
+   *
+   * @param query search sent, used to build the results
+   * @param searchId id of the search
+   * @param queryListener listener receiving the answers
+   * @param onResult called with each answer, on the thread that received it
+   */
+  public DirectSearchCollector(
+      Query query, UUID searchId, QueryListener queryListener, Consumer<QueryResult> onResult) {
+    super(query, null, queryListener);
+    this.searchId = searchId;
+    this.onResult = onResult;
+  }
+
+  @Override
+  public void notify(Message message) {
+    if (message.getCommand() == Command.SEROK && !message.isSearchFailure()) {
+      onResult.accept(new QueryResult(message, 0, query));
+    }
+  }
+
+  /** Start collecting answers, the search is sent separately */
+  @Override
+  public QueryResult call() {
+    queryListener.registerForResponse(searchId, this);
+    return new QueryResult("Collecting answers", 0, query);
+  }
+
+  /** Stop collecting answers */
+  void close() {
+    queryListener.unRegisterForResponse(searchId);
+  }
+}
+
 class UnAcknowledgedQueryExecutor extends Executor {
   Logger logger;
 
@@ -151,7 +339,7 @@ class UnAcknowledgedQueryExecutor extends Executor {
   }
 
   @Override
-  public void notify(String message) {
+  public void notify(Message message) {
     logger.log(
         Level.WARNING,
         String.format(
@@ -160,11 +348,8 @@ class UnAcknowledgedQueryExecutor extends Executor {
 
   @Override
   public QueryResult call() {
-    byte[] data = query.body.getBytes(StandardCharsets.UTF_8);
-    DatagramPacket sendDatagram =
-        new DatagramPacket(data, data.length, query.destination.getSocketAddress());
     try {
-      socket.send(sendDatagram);
+      send();
     } catch (IOException e) {
       return new QueryResult(String.format("Failed to send message due to : %s", e), 1, query);
     }
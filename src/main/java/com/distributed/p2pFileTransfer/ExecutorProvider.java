@@ -0,0 +1,179 @@
+package com.distributed.p2pFileTransfer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+abstract class ExecutorProvider {
+  static final String CACHED = "cached";
+  static final String BOUNDED = "bounded";
+  static final String VIRTUAL = "virtual";
+
+  /**
+   * Creates the executors that run the tasks of the query listener, the query dispatcher, the file
+   * transfer service and the file handler, so the threading model of the node is chosen in one
+   * place. <b>cached</b> starts a platform thread for every task that finds no idle thread,
+   * <b>bounded</b> caps each executor at a fixed number of platform threads and a fixed queue and
+   * rejects further tasks, and <b>virtual</b> starts a virtual thread per task on JDKs that have
+   * them. Platform thread executors are worker pools that report their load
+   */
+  ExecutorProvider() {}
+
+  /**
+   * Create an executor for a component
+   *
+   * @param name name of the component, used to name its threads
+   * @return executor service
+   */
+  abstract ExecutorService newExecutor(String name);
+
+  /** @return threading model of the executors created */
+  abstract String getMode();
+
+  /**
+   * Get the provider selected in the configuration
+   *
+   * @return executor provider
+   */
+  static ExecutorProvider fromConfiguration() {
+    return create(
+        Configuration.getThreadMode(),
+        Configuration.getThreadPoolSize(),
+        Configuration.getThreadQueueSize());
+  }
+
+  /**
+   * Get a provider for a threading model. Virtual threads fall back to bounded pools on JDKs
+   * without them
+   *
+   * @param mode cached, bounded or virtual
+   * @param poolSize threads per executor in bounded mode
+   * @param queueSize tasks queued per executor in bounded mode
+   * @return executor provider
+   */
+  static ExecutorProvider create(String mode, int poolSize, int queueSize) {
+    if (VIRTUAL.equals(mode)) {
+      Method factory = VirtualThreads.FACTORY;
+      if (factory != null) {
+        return new VirtualThreads(factory);
+      }
+      Logger.getLogger(ExecutorProvider.class.getName())
+          .log(Level.WARNING, "Virtual threads are not available, using bounded thread pools");
+      return new BoundedThreads(poolSize, queueSize);
+    }
+    if (BOUNDED.equals(mode)) {
+      return new BoundedThreads(poolSize, queueSize);
+    }
+    return new CachedThreads();
+  }
+
+  private static ThreadFactory namedThreads(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return task -> new Thread(task, name + "-" + count.incrementAndGet());
+  }
+
+  private static class CachedThreads extends ExecutorProvider {
+    @Override
+    ExecutorService newExecutor(String name) {
+      return new WorkerPool(
+          name,
+          0,
+          Integer.MAX_VALUE,
+          60,
+          TimeUnit.SECONDS,
+          new SynchronousQueue<>(),
+          namedThreads(name));
+    }
+
+    @Override
+    String getMode() {
+      return CACHED;
+    }
+  }
+
+  private static class BoundedThreads extends ExecutorProvider {
+    private final int poolSize;
+    private final int queueSize;
+
+    BoundedThreads(int poolSize, int queueSize) {
+      this.poolSize = Math.max(poolSize, 1);
+      this.queueSize = Math.max(queueSize, 1);
+    }
+
+    /**
+     * Tasks wait in the queue while every thread is busy and are rejected once the queue is full.
+     * Tasks must not wait on other tasks of the same executor, a full pool of such tasks would
+     * never finish
+     */
+    @Override
+    ExecutorService newExecutor(String name) {
+      WorkerPool executor =
+          new WorkerPool(
+              name,
+              poolSize,
+              poolSize,
+              60,
+              TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(queueSize),
+              namedThreads(name));
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+
+    @Override
+    String getMode() {
+      return BOUNDED;
+    }
+  }
+
+  private static class VirtualThreads extends ExecutorProvider {
+    static final Method FACTORY = findFactory();
+    private final Method newThreadPerTaskExecutor;
+
+    VirtualThreads(Method newThreadPerTaskExecutor) {
+      this.newThreadPerTaskExecutor = newThreadPerTaskExecutor;
+    }
+
+    /**
+     * Looked up by reflection so the node still builds and runs on Java 8. JDKs where virtual
+     * threads are a preview feature fail when a virtual thread builder is created
+     */
+    private static Method findFactory() {
+      try {
+        Thread.class.getMethod("ofVirtual").invoke(null);
+        return Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return null;
+      }
+    }
+
+    @Override
+    ExecutorService newExecutor(String name) {
+      try {
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+        builder =
+            builderType
+                .getMethod("name", String.class, long.class)
+                .invoke(builder, name + "-", 1L);
+        ThreadFactory threadFactory =
+            (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Unable to create virtual thread executor", e);
+      }
+    }
+
+    @Override
+    String getMode() {
+      return VIRTUAL;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.Arrays;
+
+class ExpandingRing {
+  static final int PROBE_EVERY = 4;
+  private final int[] recentDepths;
+  private int recorded = 0;
+  private int started = 0;
+
+  /**
+   * Learns the hop limit the first round of an expanding ring search starts with. The hop limit
+   * that found enough files is kept for recent searches, and a search starts with the median of
+   * those limits so that about half of the searches need a single round. A round never records less
+   * than the limit it started with, so every few searches start one ring below the median to let
+   * the estimate come back down once files get closer
+   *
+   * @param history number of recent searches kept
+   */
+  ExpandingRing(int history) {
+    recentDepths = new int[Math.max(history, 1)];
+  }
+
+  /**
+   * Get the hop limit of the first round. Every {@link #PROBE_EVERY}th search starts one ring
+   * below the median
+   *
+   * @param maxHops largest hop limit allowed
+   * @return hop limit between 1 and maxHops
+   */
+  synchronized int startingHops(int maxHops) {
+    int count = Math.min(recorded, recentDepths.length);
+    if (count == 0) {
+      return 1;
+    }
+    int[] depths = Arrays.copyOf(recentDepths, count);
+    Arrays.sort(depths);
+    int median = Math.max(1, Math.min(maxHops, depths[(count - 1) / 2]));
+    return ++started % PROBE_EVERY == 0 ? Math.max(1, median / 2) : median;
+  }
+
+  /**
+   * Get the hop limit of the round after a round that found too few files
+   *
+   * @param hops hop limit of the last round
+   * @param maxHops largest hop limit allowed
+   * @return larger hop limit, at most maxHops
+   */
+  static int nextHops(int hops, int maxHops) {
+    return Math.min(maxHops, hops * 2);
+  }
+
+  /**
+   * Record the hop limit of the round that found enough files. Searches that never found enough
+   * are not recorded
+   *
+   * @param hops hop limit that found enough files
+   */
+  synchronized void record(int hops) {
+    recentDepths[recorded++ % recentDepths.length] = hops;
+  }
+}
@@ -0,0 +1,131 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.concurrent.TimeUnit;
+
+class FailureDetector {
+  private static final int WINDOW = 100;
+  private final NodeTable<History> histories = new NodeTable<>();
+  private final long interval;
+  private final double suspectPhi;
+  private final double deadPhi;
+
+  /**
+   * Phi accrual failure detector for neighbours. Every message received from a watched node counts
+   * as a heartbeat, so nodes exchanging queries need no pings. The suspicion level phi grows with
+   * the time since a node was last heard from, measured against the mean and deviation of its
+   * recent heartbeat intervals. One heartbeat interval of silence is always accepted, since a node
+   * is only pinged when no other message arrived
+   *
+   * @param interval time between pings of a quiet node
+   * @param unit unit of interval
+   * @param suspectPhi phi from which a node is suspected and not sent searches
+   * @param deadPhi phi from which a node is taken as dead
+   */
+  FailureDetector(long interval, TimeUnit unit, double suspectPhi, double deadPhi) {
+    this.interval = unit.toNanos(interval);
+    this.suspectPhi = suspectPhi;
+    this.deadPhi = deadPhi;
+  }
+
+  /**
+   * Start watching a node, nothing is done if it is watched already. The node counts as heard from
+   * now
+   *
+   * @param node node to watch
+   * @param now current time in nanoseconds
+   */
+  void watch(Node node, long now) {
+    histories.computeIfAbsent(node, key -> new History(now));
+  }
+
+  /** Stop watching a node, used when it leaves the neighbours */
+  void forget(Node node) {
+    histories.remove(node);
+  }
+
+  /**
+   * Record a message received from a node. Nodes not watched are ignored
+   *
+   * @param node node the message came from
+   * @param now current time in nanoseconds
+   */
+  void heartbeat(Node node, long now) {
+    History history = histories.get(node);
+    if (history != null) {
+      history.heartbeat(now);
+    }
+  }
+
+  /**
+   * Get the suspicion level of a node
+   *
+   * @param node node to check
+   * @param now current time in nanoseconds
+   * @return phi, 0 for nodes not watched
+   */
+  double phi(Node node, long now) {
+    History history = histories.get(node);
+    return history == null ? 0 : history.phi(now);
+  }
+
+  boolean isSuspected(Node node) {
+    return phi(node, System.nanoTime()) >= suspectPhi;
+  }
+
+  boolean isDead(Node node, long now) {
+    return phi(node, now) >= deadPhi;
+  }
+
+  /**
+   * Get the time since a node was last heard from
+   *
+   * @param node node to check
+   * @param now current time in nanoseconds
+   * @return nanoseconds since the last message, 0 for nodes not watched
+   */
+  long sinceLastHeard(Node node, long now) {
+    History history = histories.get(node);
+    return history == null ? 0 : history.sinceLastHeard(now);
+  }
+
+  private class History {
+    private final long[] intervals = new long[WINDOW];
+    private int recorded = 0;
+    private long lastHeard;
+
+    History(long now) {
+      lastHeard = now;
+      intervals[recorded++] = interval;
+    }
+
+    synchronized void heartbeat(long now) {
+      intervals[recorded++ % WINDOW] = now - lastHeard;
+      lastHeard = now;
+    }
+
+    synchronized long sinceLastHeard(long now) {
+      return now - lastHeard;
+    }
+
+    /** Phi as approximated with the logistic function in the Akka failure detector */
+    synchronized double phi(long now) {
+      int count = Math.min(recorded, WINDOW);
+      double mean = 0;
+      for (int i = 0; i < count; i++) {
+        mean += intervals[i];
+      }
+      mean /= count;
+      double variance = 0;
+      for (int i = 0; i < count; i++) {
+        variance += (intervals[i] - mean) * (intervals[i] - mean);
+      }
+      double deviation = Math.max(Math.sqrt(variance / count), interval / 2.0);
+      double y = (now - lastHeard - mean - interval) / deviation;
+      double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+      if (now - lastHeard > mean + interval) {
+        return -Math.log10(e / (1 + e));
+      }
+      return -Math.log10(1 - 1 / (1 + e));
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class FairQueue {
+  private final ExecutorService executorService;
+  private final int workers;
+  private final int maxQueuedPerOrigin;
+  private final Map<Node, Queue<Runnable>> queues = new HashMap<>();
+  private final Queue<Node> ready = new ArrayDeque<>();
+  private final Logger logger = Logger.getLogger(FairQueue.class.getName());
+  private int running = 0;
+
+  /**
+   * Queues tasks per node and runs them round robin across nodes, so a node sending many messages
+   * only delays its own messages. At most a fixed number of tasks run at once, each on a worker
+   * taken from the executor service
+   *
+   * @param executorService executor service running the tasks
+   * @param workers maximum number of tasks running at once
+   * @param maxQueuedPerOrigin tasks queued for one node before further tasks of the node are
+   *     rejected
+   */
+  FairQueue(ExecutorService executorService, int workers, int maxQueuedPerOrigin) {
+    this.executorService = executorService;
+    this.workers = Math.max(workers, 1);
+    this.maxQueuedPerOrigin = Math.max(maxQueuedPerOrigin, 1);
+  }
+
+  /**
+   * Queue a task on behalf of a node
+   *
+   * @param origin node the task belongs to
+   * @param task task to run
+   * @return true if the task was queued, false if the node has too many queued tasks or no worker
+   *     could be started
+   */
+  synchronized boolean submit(Node origin, Runnable task) {
+    Queue<Runnable> queue = queues.computeIfAbsent(origin, key -> new ArrayDeque<>());
+    if (queue.size() >= maxQueuedPerOrigin) {
+      return false;
+    }
+    if (queue.isEmpty()) {
+      ready.add(origin);
+    }
+    queue.add(task);
+    if (running < workers) {
+      running++;
+      try {
+        executorService.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        running--;
+        if (running == 0) {
+          queue.remove(task);
+          if (queue.isEmpty()) {
+            queues.remove(origin);
+            ready.remove(origin);
+          }
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Run queued tasks, one task of the next node in turn at a time, until none are left */
+  private void drain() {
+    while (true) {
+      Runnable task;
+      synchronized (this) {
+        Node origin = ready.poll();
+        if (origin == null) {
+          running--;
+          return;
+        }
+        Queue<Runnable> queue = queues.get(origin);
+        task = queue.poll();
+        if (queue.isEmpty()) {
+          queues.remove(origin);
+        } else {
+          ready.add(origin);
+        }
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, e.toString());
+      }
+    }
+  }
+
+  /** @return number of tasks waiting for a worker */
+  synchronized int size() {
+    return queues.values().stream().mapToInt(Queue::size).sum();
+  }
+}
@@ -7,7 +7,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,7 +26,7 @@ public class FileHandler{
         this.cacheSize = cacheSize;
         logger = Logger.getLogger(this.getClass().getName());
         this.fileStorage = new Storage(cacheDir, localDir, cacheSize, this.getClass().getName());
-        executorService = Executors.newCachedThreadPool();
+        executorService = ExecutorProvider.fromConfiguration().newExecutor("file-handler");
         runServer(port);
 
     }
@@ -43,6 +42,15 @@ public class FileHandler{
     }
 
 
+    /**
+     * Get the load of the download pool
+     *
+     * @return statistics of the download pool
+     */
+    PoolStats getPoolStats() {
+        return PoolStats.of("file-handler", executorService);
+    }
+
     /**
      * Concrete implementation of file download
      *
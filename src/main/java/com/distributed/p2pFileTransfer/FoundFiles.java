@@ -0,0 +1,164 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class FoundFiles {
+  private final Set<String> files = new TreeSet<>();
+  private final Set<CompletableFuture<?>> inFlight = new HashSet<>();
+  private final CompletableFuture<Void> closedFuture = new CompletableFuture<>();
+  private final Consumer<String> onFile;
+  private final long start = System.nanoTime();
+  private final long deadline;
+  private long firstFileNanos = -1;
+  private boolean closed = false;
+  private int asked = 0;
+  private int answered = 0;
+  private boolean askedUnknown = false;
+
+  /**
+   * Files found by a search, collected as the answers arrive. Each file is passed on once, the
+   * first time any node reports it. Once closed no more files are passed on and the queries still in
+   * flight are cancelled. The search waits for answers until its deadline, answers arriving later
+   * are ignored
+   *
+   * @param onFile called with each new file, on the thread that received the answer
+   * @param timeout milliseconds from now until the deadline of the search
+   */
+  FoundFiles(Consumer<String> onFile, long timeout) {
+    this.onFile = onFile;
+    this.deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+  }
+
+  /** @return nanoseconds left until the deadline, 0 or less once it passed */
+  long remainingNanos() {
+    return deadline - System.nanoTime();
+  }
+
+  /** @return milliseconds left until the deadline, sent as the budget of searches */
+  int getBudget() {
+    return (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(remainingNanos()));
+  }
+
+  /**
+   * Count searches sent to other nodes
+   *
+   * @param count number of searches sent
+   */
+  synchronized void asked(int count) {
+    asked += count;
+  }
+
+  /**
+   * Mark the nodes reached by the search as not known, as when only nodes with matches answer. The
+   * result is then never complete
+   */
+  synchronized void askedUnknown() {
+    askedUnknown = true;
+  }
+
+  /**
+   * Add the files of an answer
+   *
+   * @param result answer of a node, ignored unless it is a SEROK
+   */
+  void add(QueryResult result) {
+    Message message = result.getMessage();
+    if (message != null && message.getCommand() == Command.SEROK && !message.isSearchFailure()) {
+      synchronized (this) {
+        if (closed || remainingNanos() <= 0) {
+          return;
+        }
+        answered++;
+      }
+      message.getFileNames().forEach(this::add);
+    }
+  }
+
+  void add(String file) {
+    synchronized (this) {
+      if (closed || !files.add(file)) {
+        return;
+      }
+      if (firstFileNanos < 0) {
+        firstFileNanos = System.nanoTime() - start;
+      }
+    }
+    onFile.accept(file);
+  }
+
+  /**
+   * Cancel a query of the search when the search is closed. A query dispatched after the search
+   * was closed is cancelled at once
+   *
+   * @param query result of a query sent by the search
+   */
+  void track(CompletableFuture<?> query) {
+    synchronized (this) {
+      if (!closed) {
+        inFlight.add(query);
+        query.whenComplete((result, e) -> untrack(query));
+        return;
+      }
+    }
+    query.cancel(false);
+  }
+
+  private synchronized void untrack(CompletableFuture<?> query) {
+    inFlight.remove(query);
+  }
+
+  /**
+   * Stop passing on files and cancel the queries in flight, used when the search is cancelled.
+   * Cancelled queries are unregistered from the listener and not sent again
+   */
+  void close() {
+    Set<CompletableFuture<?>> cancelled;
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      cancelled = new HashSet<>(inFlight);
+      inFlight.clear();
+    }
+    cancelled.forEach(query -> query.cancel(false));
+    closedFuture.complete(null);
+  }
+
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /** @return completed when the search is closed, to wake a thread waiting on its queries */
+  CompletableFuture<Void> whenClosed() {
+    return closedFuture;
+  }
+
+  /**
+   * Wait until the deadline passes or the search is closed
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  synchronized void awaitDeadline() throws InterruptedException {
+    while (!closed && remainingNanos() > 0) {
+      TimeUnit.NANOSECONDS.timedWait(this, remainingNanos());
+    }
+  }
+
+  synchronized int size() {
+    return files.size();
+  }
+
+  /** @return files found, with the number of searches sent and answered in time */
+  synchronized SearchResult toResult() {
+    return new SearchResult(files, askedUnknown ? -1 : asked, answered);
+  }
+
+  /** @return milliseconds from the start of the search to the first file, -1 if none was found */
+  synchronized long getFirstFileMillis() {
+    return firstFileNanos < 0 ? -1 : firstFileNanos / 1_000_000;
+  }
+}
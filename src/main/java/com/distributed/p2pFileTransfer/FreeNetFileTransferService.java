@@ -5,20 +5,22 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.StreamSupport;
 
 public class FreeNetFileTransferService extends AbstractFileTransferService {
 
   private static FreeNetFileTransferService instance;
   private ExecutorService executorService;
+  private final ExpandingRing expandingRing = new ExpandingRing(32);
 
   private FreeNetFileTransferService(FileHandler fileHandler, int port, Node boostrapServer)
       throws SocketException, UnknownHostException, NodeNotFoundException {
     super(fileHandler, port, boostrapServer);
-    this.executorService = Executors.newCachedThreadPool();
+    this.executorService = ExecutorProvider.fromConfiguration().newExecutor("file-transfer");
   }
 
   public static synchronized FreeNetFileTransferService getInstance(Properties config)
@@ -45,68 +47,453 @@ public class FreeNetFileTransferService extends AbstractFileTransferService {
 
   @Override
   public Future<List<String>> searchForFile(String query) {
-    return searchForFileSkippingSource(query, null);
+    return searchForFile(query, Configuration.getSearchStrategy());
   }
 
   @Override
-  protected Future<List<String>> searchForFileSkippingSource(String query, Node source) {
-    Callable<List<String>> searchExecutor =
-        () -> {
-          String queryBody = getCommandBuilder().getSearchCommand(query);
-          List<QueryResult> results;
-          if (source != null) {
-            results = floodNetwork(queryBody, Collections.singleton(source)).get();
-          } else {
-            results = floodNetwork(queryBody).get();
+  public Future<List<String>> searchForFile(String query, SearchStrategy strategy) {
+    return searchForFile(query, strategy, file -> {});
+  }
+
+  @Override
+  public Future<List<String>> searchForFile(
+      String query, SearchStrategy strategy, Consumer<String> onFile) {
+    FoundFiles found = new FoundFiles(onFile, Configuration.getSearchDeadline());
+    Callable<List<String>> search;
+    if (strategy == SearchStrategy.EXPANDING_RING) {
+      search = () -> searchExpandingRing(query, found);
+    } else if (strategy == SearchStrategy.RANDOM_WALK) {
+      search = () -> searchRandomWalk(query, found);
+    } else {
+      search =
+          () -> {
+            AtomicInteger messages = new AtomicInteger();
+            if (Configuration.isDirectReplies()) {
+              searchDirect(query, messages, found);
+            } else {
+              searchNeighbours(
+                  query, null, Configuration.getSearchHops(), newSearchId(), 0, messages, found);
+            }
+            getSearchStats(SearchStrategy.FLOOD)
+                .record(1, messages.get(), found.getFirstFileMillis());
+            return found.toResult();
+          };
+    }
+    FutureTask<List<String>> task =
+        new FutureTask<List<String>>(search) {
+          @Override
+          public boolean cancel(boolean mayInterruptIfRunning) {
+            // cancelled before closing, so the woken search can not complete the task first
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            found.close();
+            return cancelled;
           }
-          Set<String> files = new TreeSet<>();
-          results.forEach(
-              result -> {
-                String[] data = result.getBody().split(" ");
-                int fileCount = Integer.parseInt(data[2]);
-                if (fileCount > 0) {
-                  IntStream.range(6, 6 + fileCount)
-                      .forEach(
-                          idx -> {
-                            files.add(data[idx]);
-                          });
+        };
+    executorService.execute(task);
+    return task;
+  }
+
+  @Override
+  protected CompletableFuture<List<String>> searchForFileSkippingSource(
+      String query, Node source, int hops, UUID searchId, int fanout, long timeout) {
+    FoundFiles found = new FoundFiles(file -> {}, timeout);
+    String queryBody =
+        getCommandBuilder().getSearchCommand(query, hops, searchId, fanout, found.getBudget());
+    Set<Node> skip = source != null ? Collections.singleton(source) : Collections.emptySet();
+    List<Query> queries = Query.createQuery(queryBody, nextHops(skip, fanout));
+    found.asked(queries.size());
+    Supplier<Node> backup = backups(skip, queries, new AtomicInteger());
+    // no thread waits: answers are merged by the listener thread, the deadline by the timer wheel
+    List<CompletableFuture<QueryResult>> probes = new ArrayList<>();
+    CompletableFuture<?>[] merged = new CompletableFuture<?>[queries.size()];
+    for (int i = 0; i < merged.length; i++) {
+      CompletableFuture<QueryResult> probe =
+          getQueryDispatcher().dispatchHedged(queries.get(i), backup);
+      probes.add(probe);
+      merged[i] =
+          probe.handle(
+              (result, e) -> {
+                if (result != null) {
+                  found.add(result);
                 }
+                return null;
               });
-          return files.stream().map(each -> each.replaceAll("_", " ")).collect(Collectors.toList());
-        };
-    return executorService.submit(searchExecutor);
+    }
+    CompletableFuture<List<String>> files = new CompletableFuture<>();
+    CompletableFuture.allOf(merged).thenRun(() -> files.complete(found.toResult()));
+    HashedTimerWheel.Timeout deadline =
+        getQueryListener()
+            .getTimerWheel()
+            .schedule(() -> files.complete(found.toResult()), timeout, TimeUnit.MILLISECONDS);
+    files.whenComplete(
+        (result, e) -> {
+          deadline.cancel();
+          probes.forEach(probe -> probe.cancel(false));
+        });
+    return files;
+  }
+
+  /**
+   * Get a source of backup neighbours for hedged queries. Each backup is a neighbour that was not
+   * skipped and has not been sent the query or an earlier backup
+   *
+   * @param skip neighbours never used as backups
+   * @param queries queries already sent
+   * @param messages incremented for each backup picked
+   * @return picks the next backup, null once every neighbour has been sent to
+   */
+  private Supplier<Node> backups(Set<Node> skip, List<Query> queries, AtomicInteger messages) {
+    Set<Node> contacted = new HashSet<>(skip);
+    queries.forEach(query -> contacted.add(query.destination));
+    return () -> {
+      synchronized (contacted) {
+        List<Node> next = nextHops(contacted, 1);
+        if (next.isEmpty()) {
+          return null;
+        }
+        contacted.add(next.get(0));
+        messages.incrementAndGet();
+        return next.get(0);
+      }
+    };
+  }
+
+  /**
+   * Get the neighbours a search is sent to next
+   *
+   * @param skip neighbours not to send to
+   * @param fanout number of neighbours to pick at random, 0 for every neighbour not skipped
+   * @return neighbours to send to
+   */
+  private List<Node> nextHops(Set<Node> skip, int fanout) {
+    if (fanout > 0) {
+      return getNetwork().pickNeighbours(fanout, withSuspected(skip), ThreadLocalRandom.current());
+    }
+    FailureDetector detector = getQueryListener().getFailureDetector();
+    List<Node> neighbours = new ArrayList<>();
+    getNetwork().getNeighbours().forEachRemaining(
+        each -> {
+          if (!skip.contains(each) && !detector.isSuspected(each)) {
+            neighbours.add(each);
+          }
+        });
+    return neighbours;
+  }
+
+  /**
+   * Add the neighbours the failure detector suspects to the neighbours to skip
+   *
+   * @param skip neighbours not to send to
+   * @return neighbours not to send to, suspected ones included
+   */
+  private Set<Node> withSuspected(Set<Node> skip) {
+    FailureDetector detector = getQueryListener().getFailureDetector();
+    Set<Node> avoid = new HashSet<>(skip);
+    getNetwork().getNeighbours().forEachRemaining(
+        each -> {
+          if (detector.isSuspected(each)) {
+            avoid.add(each);
+          }
+        });
+    return avoid;
+  }
+
+  @Override
+  protected void forwardSearch(Message search, Node source, int hops, int budget) {
+    String queryBody = getCommandBuilder().getForwardedSearchCommand(search, hops, budget);
+    Set<Node> skip = new HashSet<>();
+    skip.add(source);
+    try {
+      skip.add(search.getSender());
+    } catch (UnknownHostException e) {
+      logger.log(Level.WARNING, e.toString());
+    }
+    for (Query query : Query.createQuery(queryBody, nextHops(skip, search.getFanout()))) {
+      getQueryDispatcher().dispatchOneWay(query);
+    }
+  }
+
+  /**
+   * Flood a search whose matches are answered directly to this node. Nodes forward the search
+   * without waiting on their neighbours and only nodes with matching files answer, so answers are
+   * collected by search id until the deadline. The search always blocks for the whole deadline, and
+   * since silent nodes may simply have no matches its result is never complete
+   *
+   * @param query what to search for
+   * @param messages incremented by the number of searches sent
+   * @param found collects the files found as the answers arrive
+   */
+  private void searchDirect(String query, AtomicInteger messages, FoundFiles found) {
+    UUID searchId = newSearchId();
+    String queryBody =
+        getCommandBuilder()
+            .getSearchCommand(
+                query, Configuration.getSearchHops(), searchId, 0, found.getBudget(), true);
+    DirectSearchCollector collector =
+        new DirectSearchCollector(
+            Query.createQuery(queryBody, (Node) null), searchId, getQueryListener(), found::add);
+    collector.call();
+    found.askedUnknown();
+    try {
+      List<Node> neighbours = nextHops(Collections.emptySet(), 0);
+      for (Query each : Query.createQuery(queryBody, neighbours)) {
+        getQueryDispatcher().dispatchOneWay(each);
+      }
+      messages.addAndGet(neighbours.size());
+      found.awaitDeadline();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      collector.close();
+    }
+  }
+
+  /**
+   * Search with a small hop limit first and search again with a larger limit while fewer than
+   * ring_min_results files are found. Every round is a new search, nodes already searched answer
+   * again
+   *
+   * @param query what to search for
+   * @param found collects the files found
+   * @return files found
+   */
+  private List<String> searchExpandingRing(String query, FoundFiles found) {
+    int maxHops = Configuration.getSearchHops();
+    int hops = expandingRing.startingHops(maxHops);
+    AtomicInteger messages = new AtomicInteger();
+    int rounds = 0;
+    while (!Thread.currentThread().isInterrupted()
+        && !found.isClosed()
+        && found.remainingNanos() > 0) {
+      rounds++;
+      searchNeighbours(query, null, hops, newSearchId(), 0, messages, found);
+      if (found.size() >= Configuration.getRingMinResults() || hops >= maxHops) {
+        break;
+      }
+      hops = ExpandingRing.nextHops(hops, maxHops);
+    }
+    // a search that never found enough files says nothing about how deep files are
+    if (found.size() >= Configuration.getRingMinResults()) {
+      expandingRing.record(hops);
+    }
+    getSearchStats(SearchStrategy.EXPANDING_RING)
+        .record(rounds, messages.get(), found.getFirstFileMillis());
+    logger.log(
+        Level.INFO,
+        String.format(
+            "Search %s found %d files in %d rounds, %d hops, %d messages",
+            query, found.size(), rounds, hops, messages.get()));
+    return found.toResult();
+  }
+
+  /**
+   * Send walkers that are each forwarded to one neighbour per hop, biased towards neighbours with a
+   * higher score in the routing table. A walker answers when it has taken walk_hops hops, so the
+   * walkers check back here after every walk and another round is sent while fewer than
+   * walk_min_results files are found. Each walker is its own search, a walker ends early when it
+   * comes back to a node it visited
+   *
+   * @param query what to search for
+   * @param found collects the files found
+   * @return files found
+   */
+  private List<String> searchRandomWalk(String query, FoundFiles found) {
+    AtomicInteger messages = new AtomicInteger();
+    int rounds = 0;
+    while (rounds < Configuration.getWalkRounds()
+        && !Thread.currentThread().isInterrupted()
+        && !found.isClosed()
+        && found.remainingNanos() > 0) {
+      rounds++;
+      List<Query> walkers = new ArrayList<>();
+      for (int i = 0; i < Configuration.getWalkers(); i++) {
+        List<Node> next = nextHops(Collections.emptySet(), 1);
+        if (next.isEmpty()) {
+          break;
+        }
+        String queryBody =
+            getCommandBuilder()
+                .getSearchCommand(
+                    query, Configuration.getWalkHops(), newSearchId(), 1, found.getBudget());
+        walkers.add(Query.createQuery(queryBody, next.get(0)));
+      }
+      found.asked(walkers.size());
+      send(walkers, Collections.emptySet(), messages, found::add, found);
+      if (walkers.isEmpty() || found.size() >= Configuration.getWalkMinResults()) {
+        break;
+      }
+    }
+    getSearchStats(SearchStrategy.RANDOM_WALK)
+        .record(rounds, messages.get(), found.getFirstFileMillis());
+    logger.log(
+        Level.INFO,
+        String.format(
+            "Search %s found %d files in %d rounds, %d messages",
+            query, found.size(), rounds, messages.get()));
+    return found.toResult();
+  }
+
+  /**
+   * Send a search to the neighbours and wait for their answers on the calling thread
+   *
+   * @param query what to search for
+   * @param source neighbour not to send the search to, null to send to every neighbour
+   * @param hops hop limit of the search
+   * @param searchId id of the search
+   * @param fanout number of neighbours to send to, picked at random, 0 for every neighbour
+   * @param messages incremented by the number of searches sent
+   * @param found collects the files found as the answers arrive
+   */
+  private void searchNeighbours(
+      String query,
+      Node source,
+      int hops,
+      UUID searchId,
+      int fanout,
+      AtomicInteger messages,
+      FoundFiles found) {
+    String queryBody =
+        getCommandBuilder().getSearchCommand(query, hops, searchId, fanout, found.getBudget());
+    Set<Node> skip = source != null ? Collections.singleton(source) : Collections.emptySet();
+    if (fanout > 0) {
+      List<Node> next = nextHops(skip, fanout);
+      found.asked(next.size());
+      send(Query.createQuery(queryBody, next), skip, messages, found::add, found);
+    } else {
+      found.asked(flood(queryBody, skip, messages, found::add, found));
+    }
+  }
+
+  /**
+   * Create the id of a search started by this node. The node remembers it so the search is not
+   * handled when it comes back from a neighbour
+   *
+   * @return search id
+   */
+  private UUID newSearchId() {
+    UUID searchId = QueryId.next();
+    getQueryListener().markSearchSeen(searchId);
+    return searchId;
   }
 
   protected Future<List<QueryResult>> floodNetwork(String queryBody, Set<Node> skip) {
-    Callable<List<QueryResult>> floodExecutor =
+    return executorService.submit(
         () -> {
-          List<Node> neighbours = new LinkedList<>();
-          Iterable<Node> iterable = () -> this.getNetwork().getNeighbours();
-          StreamSupport.stream(iterable.spliterator(), true)
-              .filter(
-                  each -> {
-                    return !skip.contains(each);
-                  })
-              .forEach(neighbours::add);
-          List<Query> queries = Query.createQuery(queryBody, neighbours);
-          List<QueryResult> results =
-              this.getQueryDispatcher().dispatchAll(queries).stream()
-                  .map(
-                      each -> {
-                        try {
-                          return each.get(20, TimeUnit.SECONDS);
-                        } catch (TimeoutException ignored) {
-                          logger.log(Level.WARNING, "Query time out");
-                        } catch (InterruptedException | ExecutionException e) {
-                          logger.log(Level.SEVERE, e.toString());
-                        }
-                        return null;
-                      })
-                  .filter(Objects::nonNull)
-                  .collect(Collectors.toList());
-          return results;
-        };
-    return executorService.submit(floodExecutor);
+          List<QueryResult> results = new CopyOnWriteArrayList<>();
+          flood(
+              queryBody,
+              skip,
+              new AtomicInteger(),
+              results::add,
+              new FoundFiles(file -> {}, Configuration.getSearchDeadline()));
+          return new ArrayList<>(results);
+        });
+  }
+
+  /**
+   * Send a query to every neighbour not skipped and wait for the results on the calling thread
+   *
+   * @param queryBody query to send
+   * @param skip neighbours not to send the query to
+   * @param messages incremented by the number of queries sent
+   * @param onResult called with each result as it arrives
+   * @param found search the query belongs to, gives the deadline and cancels the query when closed
+   * @return number of neighbours the query was sent to
+   */
+  private int flood(
+      String queryBody,
+      Set<Node> skip,
+      AtomicInteger messages,
+      Consumer<QueryResult> onResult,
+      FoundFiles found) {
+    List<Node> neighbours = nextHops(skip, 0);
+    send(Query.createQuery(queryBody, neighbours), skip, messages, onResult, found);
+    return neighbours.size();
+  }
+
+  /**
+   * Send queries and wait for the results on the calling thread until all arrived or the deadline
+   * of the search passed. Results are passed on in the order they arrive, so a slow node does not
+   * hold back the answers of the others. A query to a slow node may be hedged to a neighbour not
+   * sent to yet. Waiting stops when the thread is interrupted or the search is closed, closing the
+   * search cancels the queries. Queries still unanswered when waiting stops are cancelled
+   *
+   * @param queries queries to send
+   * @param skip neighbours never used as backups
+   * @param messages incremented by the number of queries sent
+   * @param onResult called with each result as it arrives, on the thread that received it
+   * @param found search the queries belong to
+   */
+  private void send(
+      List<Query> queries,
+      Set<Node> skip,
+      AtomicInteger messages,
+      Consumer<QueryResult> onResult,
+      FoundFiles found) {
+    messages.addAndGet(queries.size());
+    Supplier<Node> backup = backups(skip, queries, messages);
+    long start = System.nanoTime();
+    List<CompletableFuture<QueryResult>> sent = new ArrayList<>(queries.size());
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[queries.size()];
+    for (int i = 0; i < futures.length; i++) {
+      Query query = queries.get(i);
+      CompletableFuture<QueryResult> dispatched;
+      try {
+        dispatched =
+            Configuration.getHedgeBudget() > 0
+                ? this.getQueryDispatcher().dispatchHedged(query, backup)
+                : this.getQueryDispatcher().dispatchOne(query);
+      } catch (RejectedExecutionException e) {
+        // the dispatcher pool is full, this neighbour is not asked
+        dispatched = new CompletableFuture<>();
+        dispatched.completeExceptionally(e);
+      }
+      found.track(dispatched);
+      sent.add(dispatched);
+      futures[i] =
+          dispatched
+              .handle(
+                  (result, e) -> {
+                    if (e != null) {
+                      if (!(e instanceof CancellationException)) {
+                        logger.log(Level.SEVERE, e.toString());
+                      }
+                      return null;
+                    }
+                    logger.log(
+                        Level.INFO,
+                        String.format(
+                            "%s answered query %s in %d ms",
+                            query.destination,
+                            query.id,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                    if (result != null) {
+                      onResult.accept(result);
+                    }
+                    return null;
+                  });
+    }
+    try {
+      CompletableFuture.anyOf(CompletableFuture.allOf(futures), found.whenClosed())
+          .get(found.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      for (int i = 0; i < futures.length; i++) {
+        if (!futures[i].isDone()) {
+          logger.log(
+              Level.WARNING,
+              String.format(
+                  "%s did not answer query %s before the deadline",
+                  queries.get(i).destination, queries.get(i).id));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      logger.log(Level.SEVERE, e.toString());
+    } finally {
+      // nobody waits for the answers any more, stop retransmitting and free the dispatcher threads
+      sent.forEach(query -> query.cancel(false));
+    }
   }
 
   @Override
@@ -116,42 +503,45 @@ public class FreeNetFileTransferService extends AbstractFileTransferService {
 
   @Override
   public Future<FileDownloadResult> downloadFile(String fileName) {
-    String queryBody = getCommandBuilder().getSearchCommand(fileName);
-    Callable<QueryResult> fileFinder =
-        () -> {
-          List<Node> neighbours = new LinkedList<>();
-          this.getNetwork().getNeighbours().forEachRemaining(neighbours::add);
-          List<Query> queries = Query.createQuery(queryBody, neighbours);
-          for (Query query : queries) {
-            try {
-              Future<QueryResult> future = this.getQueryDispatcher().dispatchOne(query);
-              QueryResult result = future.get(20, TimeUnit.SECONDS);
-              String[] data = result.getBody().split(" ");
-              int numberOfFiles = Integer.parseInt(data[2]);
-              if (numberOfFiles > 0) {
-                for (int i = 0; i < numberOfFiles; i++) {
-                  String name = data[6 + i].replaceAll("_", " ");
-                  if (name.equals(fileName)) {
-                    return result;
-                  }
-                }
-              }
-            } catch (TimeoutException ex) {
-              logger.log(Level.WARNING, "Query time out");
-              this.getNetwork().removeNeighbour(query.destination);
-            }
-          }
-          return null;
+    String queryBody =
+        getCommandBuilder()
+            .getSearchCommand(
+                fileName,
+                Configuration.getSearchHops(),
+                newSearchId(),
+                0,
+                (int) Configuration.getSearchDeadline());
+    List<Node> neighbours = new LinkedList<>();
+    this.getNetwork().getNeighbours().forEachRemaining(neighbours::add);
+    List<Query> queries = Query.createQuery(queryBody, neighbours);
+    // every neighbour is asked at once, the first to have the exact file is downloaded from
+    Predicate<QueryResult> exactMatch =
+        result -> {
+          Message message = result.getMessage();
+          return message != null && message.getFileNames().contains(fileName);
         };
+    // neighbours whose probe expires are removed, probes cancelled by a match are not
+    Set<Node> answered = ConcurrentHashMap.newKeySet();
+    Set<Node> expired = ConcurrentHashMap.newKeySet();
+    Consumer<QueryResult> track =
+        result -> (result.getState() == 3 ? expired : answered).add(result.query.destination);
+    CompletableFuture<QueryResult> probes =
+        this.getQueryDispatcher().dispatchAny(queries, exactMatch, track);
     try {
-      QueryResult result = executorService.submit(fileFinder).get();
+      QueryResult result = probes.get(Configuration.getSearchDeadline(), TimeUnit.MILLISECONDS);
       if (result != null) {
-        String[] data = result.getBody().split(" ");
-        Node source = new Node(InetAddress.getByName(data[3]), Integer.parseInt(data[4]));
+        Node source = result.getMessage().getSender();
         return getFileHandler().downloadFileToLocal(source, fileName);
       }
+    } catch (TimeoutException e) {
+      logger.log(Level.WARNING, "Query time out");
+      probes.cancel(false);
+      // the probes are cut short before their own response timeout, so silence counts as expired
+      neighbours.stream().filter(node -> !answered.contains(node)).forEach(expired::add);
     } catch (InterruptedException | ExecutionException | UnknownHostException e) {
       logger.log(Level.SEVERE, e.toString());
+    } finally {
+      expired.forEach(this.getNetwork()::removeNeighbour);
     }
     return null;
   }
@@ -162,6 +552,11 @@ public class FreeNetFileTransferService extends AbstractFileTransferService {
     return getFileHandler().downloadFileToLocal(source, fileName);
   }
 
+  @Override
+  protected List<PoolStats> getServicePoolStats() {
+    return Collections.singletonList(PoolStats.of("file-transfer", executorService));
+  }
+
   @Override
   void stop() {
     super.stop();
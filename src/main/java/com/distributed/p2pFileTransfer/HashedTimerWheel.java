@@ -0,0 +1,156 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class HashedTimerWheel {
+  private final long tickDuration;
+  private final List<LinkedList<Timeout>> wheel;
+  private final int mask;
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  private final Thread worker;
+  private final long startTime;
+  private final Logger logger;
+  private volatile boolean terminate = false;
+  private long tick = 0;
+
+  /**
+   * Timer that keeps timeouts in a ring of buckets, one bucket per tick. Scheduling and cancelling
+   * are constant time and a single thread expires all timeouts, so a large number of outstanding
+   * deadlines costs memory rather than threads. Timeouts fire at most one tick late. Tasks run on
+   * the timer thread and must be short
+   *
+   * @param tickDuration duration of one tick
+   * @param unit unit of tickDuration
+   * @param wheelSize number of buckets, rounded up to a power of two
+   * @param name name of the timer thread
+   */
+  HashedTimerWheel(long tickDuration, TimeUnit unit, int wheelSize, String name) {
+    this.tickDuration = unit.toNanos(tickDuration);
+    int size = Integer.highestOneBit(Math.max(wheelSize, 1) - 1) << 1;
+    wheel = new ArrayList<>(Math.max(size, 1));
+    for (int i = 0; i < Math.max(size, 1); i++) {
+      wheel.add(new LinkedList<>());
+    }
+    mask = wheel.size() - 1;
+    logger = Logger.getLogger(this.getClass().getName());
+    startTime = System.nanoTime();
+    worker = new Thread(this::run, name);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Schedule a task to run once after a delay
+   *
+   * @param task task to run on the timer thread
+   * @param delay delay before running the task
+   * @param unit unit of delay
+   * @return handle that can be used to cancel the task
+   */
+  Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  /** Stop the timer thread. Timeouts not yet expired never run */
+  void stop() {
+    terminate = true;
+    worker.interrupt();
+  }
+
+  private void run() {
+    while (!terminate) {
+      long deadline = tickDuration * (tick + 1);
+      long sleep = deadline - (System.nanoTime() - startTime);
+      if (sleep > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+          continue;
+        }
+      }
+      transferPendingTimeouts();
+      expireTimeouts(wheel.get((int) (tick & mask)), deadline);
+      tick++;
+    }
+  }
+
+  private void transferPendingTimeouts() {
+    Timeout timeout;
+    while ((timeout = pendingTimeouts.poll()) != null) {
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      long expiryTick = Math.max(timeout.deadline / tickDuration, tick);
+      timeout.remainingRounds = (expiryTick - tick) / wheel.size();
+      wheel.get((int) (expiryTick & mask)).add(timeout);
+    }
+  }
+
+  private void expireTimeouts(LinkedList<Timeout> bucket, long deadline) {
+    Iterator<Timeout> timeouts = bucket.iterator();
+    while (timeouts.hasNext()) {
+      Timeout timeout = timeouts.next();
+      if (timeout.isCancelled()) {
+        timeouts.remove();
+      } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+        timeouts.remove();
+        timeout.expire();
+      } else {
+        timeout.remainingRounds--;
+      }
+    }
+  }
+
+  class Timeout {
+    private static final int INITIAL = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(INITIAL);
+    private long remainingRounds;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancel the timeout
+     *
+     * @return true if the task will not run, false if it already ran
+     */
+    boolean cancel() {
+      return state.compareAndSet(INITIAL, CANCELLED) || state.get() == CANCELLED;
+    }
+
+    boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+
+    private void expire() {
+      if (state.compareAndSet(INITIAL, EXPIRED)) {
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          logger.log(Level.WARNING, "Timer task failed: " + e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class Heartbeat {
+  private final AbstractFileTransferService fileTransferService;
+  private final long interval;
+  private final Logger logger = Logger.getLogger(Heartbeat.class.getName());
+  private volatile boolean stopped = false;
+
+  /**
+   * Keeps the failure detector fed and the routing table live. Every interval the neighbours are
+   * checked: a neighbour not heard from for an interval is sent a PING, which it answers with a
+   * PONG, and a neighbour the failure detector takes as dead is removed from the routing table.
+   * Neighbours sending other messages are not pinged
+   *
+   * @param fileTransferService file transfer service whose neighbours are checked
+   * @param interval time between checks
+   * @param unit unit of interval
+   */
+  Heartbeat(AbstractFileTransferService fileTransferService, long interval, TimeUnit unit) {
+    this.fileTransferService = fileTransferService;
+    this.interval = unit.toNanos(interval);
+  }
+
+  void start() {
+    schedule();
+  }
+
+  void stop() {
+    stopped = true;
+  }
+
+  private void schedule() {
+    if (!stopped) {
+      fileTransferService
+          .getQueryListener()
+          .getTimerWheel()
+          .schedule(this::beat, interval, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void beat() {
+    try {
+      check(System.nanoTime());
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, e.toString());
+    } finally {
+      schedule();
+    }
+  }
+
+  /**
+   * Ping quiet neighbours and remove dead ones
+   *
+   * @param now current time in nanoseconds
+   */
+  void check(long now) {
+    FailureDetector detector = fileTransferService.getQueryListener().getFailureDetector();
+    Network network = fileTransferService.getNetwork();
+    String ping = null;
+    for (Iterator<Node> neighbours = network.getNeighbours(); neighbours.hasNext(); ) {
+      Node node = neighbours.next();
+      detector.watch(node, now);
+      if (detector.isDead(node, now)) {
+        logger.log(
+            Level.WARNING,
+            String.format(
+                "%s not heard from for %d ms, removed from the neighbours",
+                node, TimeUnit.NANOSECONDS.toMillis(detector.sinceLastHeard(node, now))));
+        network.removeNeighbour(node);
+      } else if (detector.sinceLastHeard(node, now) >= interval) {
+        if (ping == null) {
+          ping = fileTransferService.getCommandBuilder().getPingCommand();
+        }
+        fileTransferService.getQueryDispatcher().dispatchOneWay(Query.createQuery(ping, node));
+      }
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.distributed.p2pFileTransfer;
+
+class HedgeBudget {
+  private final double ratio;
+  private final double capacity;
+  private double tokens;
+
+  /**
+   * Caps the extra messages sent by hedged queries. Every query sent earns a fraction of a token
+   * and a hedge spends a whole one, so hedges stay below that fraction of the queries sent no
+   * matter how slow the neighbours get. Unspent tokens are kept up to a small burst
+   *
+   * @param ratio hedges allowed per query sent, 0 or less to never hedge
+   * @param burst hedges that can be sent at once after a quiet period
+   */
+  HedgeBudget(double ratio, int burst) {
+    this.ratio = ratio;
+    this.capacity = Math.max(burst, 1);
+  }
+
+  boolean isEnabled() {
+    return ratio > 0;
+  }
+
+  /** Earn the share of a query sent */
+  synchronized void earn() {
+    tokens = Math.min(capacity, tokens + ratio);
+  }
+
+  /** @return true if a hedge may be sent, the token is taken */
+  synchronized boolean trySpend() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+
+  /** Give back a token taken for a hedge that was not sent */
+  synchronized void refund() {
+    tokens = Math.min(capacity, tokens + 1);
+  }
+}
@@ -0,0 +1,45 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.Arrays;
+
+class LatencyHistory {
+  static final int MIN_SAMPLES = 8;
+  private final long[] recent;
+  private int recorded = 0;
+
+  /**
+   * Answer times of recent queries sent to one neighbour. Percentiles are taken over the kept
+   * samples, so they follow the neighbour as it speeds up or slows down
+   *
+   * @param history number of recent answer times kept
+   */
+  LatencyHistory(int history) {
+    recent = new long[Math.max(history, MIN_SAMPLES)];
+  }
+
+  /**
+   * Record the answer time of a query
+   *
+   * @param latency nanoseconds from sending the query to its answer
+   */
+  synchronized void record(long latency) {
+    recent[recorded++ % recent.length] = latency;
+  }
+
+  /**
+   * Get a percentile of the recent answer times
+   *
+   * @param percent percentile to get, between 0 and 100
+   * @return answer time in nanoseconds, -1 until MIN_SAMPLES answers are recorded
+   */
+  synchronized long percentile(int percent) {
+    int count = Math.min(recorded, recent.length);
+    if (count < MIN_SAMPLES) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(recent, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percent / 100.0 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, rank))];
+  }
+}
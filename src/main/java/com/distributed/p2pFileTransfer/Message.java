@@ -0,0 +1,370 @@
+package com.distributed.p2pFileTransfer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+final class Message {
+  private final byte[] data;
+  private final int[] fieldStarts;
+  private final int fieldCount;
+  private final Command command;
+  private String text;
+
+  /**
+   * Received message in the text format. The message is split in to space separated fields in a
+   * single pass when created, fields are numbered as in the problem description with the length
+   * prefix as field 0 and the command as field 1. Field values are only turned in to strings,
+   * numbers, ids and nodes when asked for
+   *
+   * @param data bytes of the message, owned by the message from now on
+   */
+  private Message(byte[] data) {
+    this.data = data;
+    int[] starts = new int[16];
+    int count = 1;
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] == ' ') {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = i + 1;
+      }
+    }
+    fieldStarts = starts;
+    fieldCount = count;
+    command = count > 1 ? Command.lookup(data, starts[1], fieldLength(1)) : null;
+  }
+
+  /**
+   * Parse a received message. The remaining bytes of the buffer are copied so the buffer can be
+   * reused once this returns
+   *
+   * @param buffer buffer holding the message, position at the start of the message
+   * @return parsed message
+   */
+  static Message parse(ByteBuffer buffer) {
+    byte[] data = new byte[buffer.remaining()];
+    buffer.get(data);
+    return new Message(data);
+  }
+
+  /**
+   * Parse a message held in a string
+   *
+   * @param message message according to the problem description
+   * @return parsed message
+   */
+  static Message parse(String message) {
+    Message parsed = new Message(message.getBytes(StandardCharsets.UTF_8));
+    parsed.text = message;
+    return parsed;
+  }
+
+  /**
+   * Wrap bytes built by a decoder without copying them
+   *
+   * @param data message in the text format
+   * @return parsed message
+   */
+  static Message wrap(byte[] data) {
+    return new Message(data);
+  }
+
+  /** @return command of the message or null if the command is unknown */
+  Command getCommand() {
+    return command;
+  }
+
+  /**
+   * Get the length written in front of the message. Older nodes send search queries with the
+   * length of the message before the query id was added, so the value is not used to find the end
+   * of a message
+   *
+   * @return length prefix of the message
+   */
+  int getLength() {
+    return getInt(0);
+  }
+
+  int getFieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * Get a field as it appears in the message
+   *
+   * @param field index of the field
+   * @return field value
+   */
+  String getString(int field) {
+    return new String(data, start(field), fieldLength(field), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get a field holding a decimal number
+   *
+   * @param field index of the field
+   * @return field value
+   * @throws NumberFormatException if the field is not a number
+   */
+  int getInt(int field) {
+    int start = start(field);
+    int end = start + fieldLength(field);
+    boolean negative = start < end && data[start] == '-';
+    int i = negative ? start + 1 : start;
+    if (i == end) {
+      throw new NumberFormatException("Field " + field + " is not a number");
+    }
+    int value = 0;
+    for (; i < end; i++) {
+      int digit = data[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Field " + field + " is not a number");
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Get a field holding a query id
+   *
+   * @param field index of the field
+   * @return query id
+   * @throws IllegalArgumentException if the field is not a query id
+   */
+  UUID getId(int field) {
+    int start = start(field);
+    if (fieldLength(field) != 36) {
+      throw new IllegalArgumentException("Field " + field + " is not a query id");
+    }
+    long mostSignificantBits = 0;
+    long leastSignificantBits = 0;
+    int digits = 0;
+    for (int i = start; i < start + 36; i++) {
+      int offset = i - start;
+      if (offset == 8 || offset == 13 || offset == 18 || offset == 23) {
+        if (data[i] != '-') {
+          throw new IllegalArgumentException("Field " + field + " is not a query id");
+        }
+        continue;
+      }
+      int digit = Character.digit(data[i], 16);
+      if (digit < 0) {
+        throw new IllegalArgumentException("Field " + field + " is not a query id");
+      }
+      if (digits++ < 16) {
+        mostSignificantBits = mostSignificantBits << 4 | digit;
+      } else {
+        leastSignificantBits = leastSignificantBits << 4 | digit;
+      }
+    }
+    return new UUID(mostSignificantBits, leastSignificantBits);
+  }
+
+  /**
+   * Get a field holding a file name. Surrounding quotes are removed and underscores are turned back
+   * in to spaces
+   *
+   * @param field index of the field
+   * @return file name
+   */
+  String getFileName(int field) {
+    int start = start(field);
+    int length = fieldLength(field);
+    if (length >= 2 && data[start] == '"' && data[start + length - 1] == '"') {
+      start++;
+      length -= 2;
+    }
+    return new String(data, start, length, StandardCharsets.UTF_8).replace('_', ' ');
+  }
+
+  /**
+   * Get the node given by an ip address field and the port field after it
+   *
+   * @param field index of the ip address field
+   * @return node
+   * @throws UnknownHostException if the ip address is invalid
+   */
+  Node getNode(int field) throws UnknownHostException {
+    byte[] address = parseIpv4(start(field), fieldLength(field));
+    InetAddress ipAddress =
+        address != null ? InetAddress.getByAddress(address) : InetAddress.getByName(getString(field));
+    return Node.lookup(ipAddress, getInt(field + 1));
+  }
+
+  /**
+   * Check if a token appears among the fields after the command
+   *
+   * @param token token to look for
+   * @return true if a field equals the token
+   */
+  boolean hasToken(String token) {
+    byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+    for (int field = 2; field < fieldCount; field++) {
+      if (fieldLength(field) == bytes.length && regionMatches(start(field), bytes)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return query id of a SER or SEROK message, the sixth field of both */
+  UUID getQueryId() {
+    return getId(5);
+  }
+
+  /** @return node which sent a SER, SEROK, JOIN, LEAVE, PING, PONG, REG or UNREG message */
+  Node getSender() throws UnknownHostException {
+    return getNode(command == Command.SEROK ? 3 : 2);
+  }
+
+  /** @return hops a SER message may still be forwarded, or -1 if the sender set no limit */
+  int getHops() {
+    return fieldCount > 7 ? getInt(6) : -1;
+  }
+
+  /**
+   * Get the id of the search a SER message belongs to. Unlike the query id, which is new on every
+   * hop, the search id is the same on every copy of a search
+   *
+   * @return search id, or the query id if the sender did not send one
+   */
+  UUID getSearchId() {
+    return fieldCount > 7 ? getId(7) : getQueryId();
+  }
+
+  /** @return number of neighbours a SER message is forwarded to, 0 if it goes to every neighbour */
+  int getFanout() {
+    return fieldCount > 8 ? getInt(8) : 0;
+  }
+
+  /**
+   * Get the time a SER message has to be answered in. The budget is relative, so nodes need no
+   * common clock; each node forwarding a search passes on what is left of its own budget
+   *
+   * @return milliseconds left to answer, or -1 if the sender set no budget
+   */
+  int getBudget() {
+    return fieldCount > 9 ? getInt(9) : -1;
+  }
+
+  /**
+   * Check if nodes with matching files answer a SER message straight to the node that started the
+   * search, whose address the message carries, rather than to the node that forwarded it
+   *
+   * @return true if matches are answered directly with the search id as the query id
+   */
+  boolean isDirectReply() {
+    return fieldCount > 10 && getInt(10) == 1;
+  }
+
+  /** @return name of the file searched for by a SER message */
+  String getSearchName() {
+    return getFileName(4);
+  }
+
+  /** @return number of files found in a SEROK message */
+  int getFileCount() {
+    return getInt(2);
+  }
+
+  /** @return true if a SEROK message reports the search failed rather than a file count */
+  boolean isSearchFailure() {
+    return getFileCount() >= CommandBuilder.SEARCH_ERROR;
+  }
+
+  /** @return names of the files found in a SEROK message */
+  List<String> getFileNames() {
+    int fileCount = isSearchFailure() ? 0 : Math.min(getFileCount(), fieldCount - 6);
+    if (fileCount <= 0) {
+      return Collections.emptyList();
+    }
+    List<String> files = new ArrayList<>(fileCount);
+    for (int field = 6; field < 6 + fileCount; field++) {
+      files.add(getFileName(field));
+    }
+    return files;
+  }
+
+  private int start(int field) {
+    if (field < 0 || field >= fieldCount) {
+      throw new IllegalArgumentException(
+          String.format("Message has %d fields, field %d requested", fieldCount, field));
+    }
+    return fieldStarts[field];
+  }
+
+  private int fieldLength(int field) {
+    int end = field + 1 < fieldCount ? fieldStarts[field + 1] - 1 : data.length;
+    return end - start(field);
+  }
+
+  private boolean regionMatches(int start, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if (data[start + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] parseIpv4(int start, int length) {
+    byte[] address = new byte[4];
+    int octet = 0;
+    int value = 0;
+    int digits = 0;
+    for (int i = start; i < start + length; i++) {
+      byte b = data[i];
+      if (b == '.') {
+        if (digits == 0 || octet == 3) {
+          return null;
+        }
+        address[octet++] = (byte) value;
+        value = 0;
+        digits = 0;
+      } else if (b >= '0' && b <= '9' && digits < 3) {
+        value = value * 10 + (b - '0');
+        digits++;
+        if (value > 255) {
+          return null;
+        }
+      } else {
+        return null;
+      }
+    }
+    if (octet != 3 || digits == 0) {
+      return null;
+    }
+    address[3] = (byte) value;
+    return address;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return Arrays.equals(data, ((Message) o).data);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(data);
+  }
+
+  /** @return message in the text format */
+  @Override
+  public String toString() {
+    if (text == null) {
+      text = new String(data, StandardCharsets.UTF_8);
+    }
+    return text;
+  }
+}
@@ -102,6 +102,48 @@ class Network {
     return list.iterator();
   }
 
+  /**
+   * Pick neighbours at random for a random walk. The chance of picking a neighbour grows with its
+   * score in the routing table, a neighbour with score s is picked s + 1 times as often as one with
+   * score 0
+   *
+   * @param count number of neighbours to pick
+   * @param skip neighbours not to pick
+   * @param random source of randomness
+   * @return distinct neighbours, fewer than count if there are not enough neighbours
+   */
+  List<Node> pickNeighbours(int count, Set<Node> skip, Random random) {
+    return pickWeighted(routingTable, count, skip, random);
+  }
+
+  static List<Node> pickWeighted(
+      Map<Integer, ? extends List<Node>> table, int count, Set<Node> skip, Random random) {
+    List<Node> candidates = new ArrayList<>();
+    List<Integer> weights = new ArrayList<>();
+    int total = 0;
+    for (Map.Entry<Integer, ? extends List<Node>> entry : table.entrySet()) {
+      for (Node node : new ArrayList<>(entry.getValue())) {
+        if (!skip.contains(node) && !candidates.contains(node)) {
+          candidates.add(node);
+          weights.add(entry.getKey() + 1);
+          total += entry.getKey() + 1;
+        }
+      }
+    }
+    List<Node> picked = new ArrayList<>();
+    while (picked.size() < count && !candidates.isEmpty()) {
+      int target = random.nextInt(total);
+      int index = 0;
+      while (target >= weights.get(index)) {
+        target -= weights.get(index);
+        index++;
+      }
+      picked.add(candidates.remove(index));
+      total -= weights.remove(index);
+    }
+    return picked;
+  }
+
   /**
    * Used to reset the network state by disconnecting with boostrap server and reconnecting
    *
@@ -118,6 +160,7 @@ class Network {
    * @param node new neighbour
    */
   void addNeighbour(Node node) {
+    node = Node.of(node.getIpAddress(), node.getPort());
     int count = 0;
     for(Integer fileCount: routingTable.keySet()){
       List<Node> nodes = routingTable.get(fileCount);
@@ -194,13 +237,14 @@ class Network {
    * Used to remove none responsive neighbours from the routing table
    */
   public void removeNeighbour(Node node){
+    fileTransferService.getQueryListener().getFailureDetector().forget(node);
     for (Map.Entry<Integer, ArrayList<Node>> entityArry : routingTable.entrySet()) {
       entityArry.getValue().removeIf(other-> other.equals(node));
     }
   }
 
   private void sendJoinRequest(Node node) {
-    Query query = Query.createQuery(cb.getJoinCommand(), node);
+    Query query = Query.createQuery(cb.getJoinCommand(Configuration.isBinaryCodec()), node);
     queryDispatcher.dispatchOne(query);
   }
 
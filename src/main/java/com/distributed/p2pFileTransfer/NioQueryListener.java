@@ -0,0 +1,114 @@
+package com.distributed.p2pFileTransfer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+
+class NioQueryListener extends QueryListener {
+  private static final int MAX_DATAGRAM_SIZE = 65536;
+  private final DatagramChannel channel;
+  private final Selector selector;
+  private final ByteBufferPool bufferPool;
+
+  /**
+   * Query listener that receives datagrams on a non blocking channel using a selector. Datagrams
+   * are received in to pooled buffers and only the received bytes are decoded. {@link
+   * #getSocket()} returns the socket of the channel so that executors send on the same channel
+   *
+   * @param fileTransferService file transfer service the listener belongs to
+   * @param port port to listen on
+   * @param poolSize maximum number of idle receive buffers kept for reuse
+   * @param directBuffers whether receive buffers are allocated outside the heap
+   * @throws SocketException if unable to open or bind the channel
+   */
+  NioQueryListener(
+      AbstractFileTransferService fileTransferService,
+      int port,
+      int poolSize,
+      boolean directBuffers)
+      throws SocketException {
+    super(fileTransferService);
+    bufferPool = new ByteBufferPool(MAX_DATAGRAM_SIZE, poolSize, directBuffers);
+    try {
+      channel = DatagramChannel.open();
+      channel.socket().setReuseAddress(true);
+      channel.bind(new InetSocketAddress(port));
+      channel.configureBlocking(false);
+      selector = Selector.open();
+      channel.register(selector, SelectionKey.OP_READ);
+    } catch (IOException e) {
+      SocketException exception = new SocketException("Unable to open channel: " + e.getMessage());
+      exception.initCause(e);
+      throw exception;
+    }
+    socket = channel.socket();
+  }
+
+  @Override
+  public void run() {
+    while (!terminate) {
+      try {
+        if (selector.select(1000) == 0) {
+          logger.log(Level.FINE, "Listener timeout");
+          continue;
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (key.isValid() && key.isReadable()) {
+            receiveAll();
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("IO exception in socket listener");
+      }
+    }
+    try {
+      selector.close();
+      channel.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, e.toString());
+    }
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    selector.wakeup();
+  }
+
+  /** Drain every datagram currently queued on the channel */
+  private void receiveAll() throws IOException {
+    while (true) {
+      ByteBuffer buffer = bufferPool.acquire();
+      InetSocketAddress sender = (InetSocketAddress) channel.receive(buffer);
+      if (sender == null) {
+        bufferPool.release(buffer);
+        return;
+      }
+      queryCount.incrementAndGet();
+      buffer.flip();
+      Node origin = NodeRegistry.lookup(sender);
+      List<Message> messages;
+      try {
+        messages = DatagramCoalescer.unpack(buffer, command -> admit(origin, command));
+      } catch (IllegalArgumentException e) {
+        logger.log(Level.WARNING, String.format("Dropped malformed datagram: %s", e.getMessage()));
+        continue;
+      } finally {
+        bufferPool.release(buffer);
+      }
+      for (Message message : messages) {
+        submit(message, origin);
+      }
+    }
+  }
+}
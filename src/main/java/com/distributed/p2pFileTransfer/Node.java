@@ -1,38 +1,75 @@
 package com.distributed.p2pFileTransfer;
 
 import java.net.*;
-import java.util.Objects;
+import java.util.Arrays;
 
 public class Node {
+    private static final byte[] LOOPBACK_ALIAS = {127, 0, 1, 1};
+    private static final InetAddress LOOPBACK = loopback();
 
-    private InetAddress ipAddress = null;
+    private final InetAddress ipAddress;
     private final int port;
     private final InetSocketAddress socketAddress;
+    private final int id;
 
     /**
-     * Represent a node in the distributed system
+     * Represent a node in the distributed system. Nodes with the same address and port share an id
+     * given by {@link NodeRegistry}, equality compares ids and falls back to the address for
+     * transient nodes, which have none
      *
      * @param ipAddress IP address of the node
      * @param port      port of the node
      */
     public Node(InetAddress ipAddress, int port) {
-        try {
-            if (ipAddress != null && ipAddress.equals(InetAddress.getByName("127.0.1.1"))){
-                this.ipAddress = InetAddress.getByName("127.0.0.1");
-            } else {
-                this.ipAddress = ipAddress;
-            }
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
+        this(ipAddress, port, true);
+    }
+
+    private Node(InetAddress ipAddress, int port, boolean intern) {
+        if (ipAddress != null && Arrays.equals(ipAddress.getAddress(), LOOPBACK_ALIAS)) {
+            this.ipAddress = LOOPBACK;
+        } else {
+            this.ipAddress = ipAddress;
         }
         this.port = port;
         socketAddress = new InetSocketAddress(this.ipAddress, port);
+        id = intern ? NodeRegistry.idOf(socketAddress) : NodeRegistry.peekId(socketAddress);
     }
 
     public Node(int port) throws UnknownHostException {
         this(InetAddress.getLocalHost(), port);
     }
 
+    /**
+     * Get the interned node of an address and port without creating a node if it is known
+     *
+     * @param ipAddress IP address of the node
+     * @param port      port of the node
+     * @return node
+     */
+    static Node of(InetAddress ipAddress, int port) {
+        return NodeRegistry.intern(ipAddress, port);
+    }
+
+    /**
+     * Get a node for an address read from a received message without interning the address. The
+     * node has no id if the address was never interned, see {@link NodeRegistry#lookup}
+     *
+     * @param ipAddress IP address of the node
+     * @param port      port of the node
+     * @return node
+     */
+    static Node lookup(InetAddress ipAddress, int port) {
+        return new Node(ipAddress, port, false);
+    }
+
+    private static InetAddress loopback() {
+        try {
+            return InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public InetAddress getIpAddress() {
         return ipAddress;
     }
@@ -45,17 +82,25 @@ public class Node {
         return socketAddress;
     }
 
+    /** @return dense id of the node, see {@link NodeRegistry}, or -1 for a transient node */
+    int getId() {
+        return id;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        Node node = (Node) o;
-        return port == node.port && Objects.equals(ipAddress, node.ipAddress);
+        Node other = (Node) o;
+        if (id >= 0 && other.id >= 0) {
+            return id == other.id;
+        }
+        return socketAddress.equals(other.socketAddress);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(ipAddress, port);
+        return socketAddress.hashCode();
     }
 
     @Override
@@ -0,0 +1,92 @@
+package com.distributed.p2pFileTransfer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class NodeRegistry {
+  private static final ConcurrentHashMap<InetSocketAddress, Integer> ids = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<InetSocketAddress, Node> nodes = new ConcurrentHashMap<>();
+  private static final AtomicInteger nextId = new AtomicInteger();
+
+  /**
+   * Interns nodes by socket address. Every interned address gets a dense int id, nodes compare by
+   * that id and tables indexed by node can be arrays. Only neighbours and peers this node talks to
+   * are interned. Received datagrams are mapped to the interned node of their sender, a sender that
+   * is not known gets a transient node with no id, so spoofed addresses cannot grow the registry.
+   * Interned addresses are never forgotten, ids stay valid for the life of the node
+   */
+  private NodeRegistry() {}
+
+  /**
+   * Get the id of a socket address, assigning the next id if the address is new
+   *
+   * @param socketAddress address of the node, with the address already canonical
+   * @return id of the address
+   */
+  static int idOf(InetSocketAddress socketAddress) {
+    Integer id = ids.get(socketAddress);
+    if (id != null) {
+      return id;
+    }
+    return ids.computeIfAbsent(socketAddress, key -> nextId.getAndIncrement());
+  }
+
+  /**
+   * Get the id of a socket address without assigning one
+   *
+   * @param socketAddress address of the node, with the address already canonical
+   * @return id of the address, or -1 if it was never interned
+   */
+  static int peekId(InetSocketAddress socketAddress) {
+    Integer id = ids.get(socketAddress);
+    return id != null ? id : -1;
+  }
+
+  /**
+   * Get the interned node of a socket address, or a transient node with no id if the address was
+   * never interned. Used for addresses read from received datagrams
+   *
+   * @param socketAddress address a datagram was received from
+   * @return node
+   */
+  static Node lookup(InetSocketAddress socketAddress) {
+    Node node = nodes.get(socketAddress);
+    if (node != null) {
+      return node;
+    }
+    return Node.lookup(socketAddress.getAddress(), socketAddress.getPort());
+  }
+
+  /**
+   * Get the interned node of a socket address
+   *
+   * @param socketAddress address a datagram was received from
+   * @return node
+   */
+  static Node intern(InetSocketAddress socketAddress) {
+    Node node = nodes.get(socketAddress);
+    if (node != null) {
+      return node;
+    }
+    return nodes.computeIfAbsent(
+        socketAddress, key -> new Node(key.getAddress(), key.getPort()));
+  }
+
+  /**
+   * Get the interned node of an address and port
+   *
+   * @param ipAddress IP address of the node
+   * @param port port of the node
+   * @return node
+   */
+  static Node intern(InetAddress ipAddress, int port) {
+    return intern(new InetSocketAddress(ipAddress, port));
+  }
+
+  /** @return number of ids assigned, every id is below this */
+  static int size() {
+    return nextId.get();
+  }
+}
@@ -0,0 +1,82 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+class NodeTable<V> {
+  private volatile AtomicReferenceArray<V> values;
+
+  /**
+   * Map from node to value stored in an array indexed by node id. Lookups are a lock free array
+   * read, writes take a lock and grow the array when a node with a larger id is stored. Transient
+   * nodes have no id and are never stored
+   */
+  NodeTable() {
+    values = new AtomicReferenceArray<>(Math.max(NodeRegistry.size(), 16));
+  }
+
+  V get(Node node) {
+    AtomicReferenceArray<V> current = values;
+    int id = node.getId();
+    return id >= 0 && id < current.length() ? current.get(id) : null;
+  }
+
+  boolean contains(Node node) {
+    return get(node) != null;
+  }
+
+  synchronized void put(Node node, V value) {
+    if (node.getId() < 0) {
+      return;
+    }
+    ensureCapacity(node.getId()).set(node.getId(), value);
+  }
+
+  /**
+   * Get the value of a node, storing a new value if the node has none. The new value of a transient
+   * node is returned without being stored
+   *
+   * @param node node to look up
+   * @param factory creates the value of the node
+   * @return value of the node
+   */
+  V computeIfAbsent(Node node, Function<Node, V> factory) {
+    V value = get(node);
+    if (value != null) {
+      return value;
+    }
+    if (node.getId() < 0) {
+      return factory.apply(node);
+    }
+    synchronized (this) {
+      AtomicReferenceArray<V> current = ensureCapacity(node.getId());
+      value = current.get(node.getId());
+      if (value == null) {
+        value = factory.apply(node);
+        current.set(node.getId(), value);
+      }
+      return value;
+    }
+  }
+
+  synchronized void remove(Node node) {
+    if (node.getId() >= 0 && node.getId() < values.length()) {
+      values.set(node.getId(), null);
+    }
+  }
+
+  /** Grow the array to hold an id. Called with the lock held so no write is lost while copying */
+  private AtomicReferenceArray<V> ensureCapacity(int id) {
+    AtomicReferenceArray<V> current = values;
+    if (id >= current.length()) {
+      AtomicReferenceArray<V> grown =
+          new AtomicReferenceArray<>(Math.max(id + 1, current.length() * 2));
+      for (int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+      }
+      values = grown;
+      current = grown;
+    }
+    return current;
+  }
+}
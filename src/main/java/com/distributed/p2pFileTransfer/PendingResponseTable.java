@@ -0,0 +1,143 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+class PendingResponseTable {
+  private final ConcurrentHashMap<UUID, Entry> byQueryId = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Node, Queue<Entry>> byNode = new ConcurrentHashMap<>();
+  private final long timeToLive;
+
+  /**
+   * Keeps track of executors waiting for a response. Responses carrying a query id (SEROK) are
+   * matched to a single executor by that id. Responses without an id (JOINOK, LEAVEOK, REGOK,
+   * UNROK) are matched to the executors waiting on the node that sent them. All operations are
+   * lock free
+   *
+   * @param timeToLive how long an executor may wait before its entry is expired
+   * @param unit unit of timeToLive
+   */
+  PendingResponseTable(long timeToLive, TimeUnit unit) {
+    this.timeToLive = unit.toNanos(timeToLive);
+  }
+
+  /**
+   * Register an executor expecting a response carrying the given query id
+   *
+   * @param queryId id of the query sent by the executor
+   * @param executor executor waiting for the response
+   */
+  void register(UUID queryId, Executor executor) {
+    byQueryId.put(queryId, new Entry(executor));
+  }
+
+  /**
+   * Register an executor expecting a response without a query id from a node
+   *
+   * @param node node from which the response is expected
+   * @param executor executor waiting for the response
+   */
+  void register(Node node, Executor executor) {
+    byNode.computeIfAbsent(node, key -> new ConcurrentLinkedQueue<>()).add(new Entry(executor));
+  }
+
+  void unRegister(UUID queryId) {
+    byQueryId.remove(queryId);
+  }
+
+  void unRegister(Node node, Executor executor) {
+    Queue<Entry> entries = byNode.get(node);
+    if (entries != null) {
+      entries.removeIf(entry -> entry.executor == executor);
+    }
+  }
+
+  /**
+   * Get the executor waiting for a response to a query
+   *
+   * @param queryId id carried in the response
+   * @return executor or null if no executor is waiting for the query
+   */
+  Executor get(UUID queryId) {
+    Entry entry = byQueryId.get(queryId);
+    return entry == null ? null : entry.executor;
+  }
+
+  /**
+   * Get the executors waiting for a response from a node
+   *
+   * @param node node which sent the response
+   * @return executors waiting on the node, iteration is weakly consistent
+   */
+  Iterable<Executor> get(Node node) {
+    Queue<Entry> entries = byNode.get(node);
+    if (entries == null) {
+      return Collections.emptyList();
+    }
+    return () -> {
+      Iterator<Entry> iterator = entries.iterator();
+      return new Iterator<Executor>() {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Executor next() {
+          return iterator.next().executor;
+        }
+      };
+    };
+  }
+
+  /**
+   * Remove every entry older than the time to live and tell its executor that it expired
+   *
+   * @return number of expired entries
+   */
+  int expire() {
+    long now = System.nanoTime();
+    int expired = 0;
+    for (Map.Entry<UUID, Entry> each : byQueryId.entrySet()) {
+      if (each.getValue().isStale(now) && byQueryId.remove(each.getKey(), each.getValue())) {
+        each.getValue().executor.expire();
+        expired++;
+      }
+    }
+    for (Map.Entry<Node, Queue<Entry>> each : byNode.entrySet()) {
+      Iterator<Entry> entries = each.getValue().iterator();
+      while (entries.hasNext()) {
+        Entry entry = entries.next();
+        if (entry.isStale(now) && each.getValue().remove(entry)) {
+          entry.executor.expire();
+          expired++;
+        }
+      }
+    }
+    return expired;
+  }
+
+  int size() {
+    return byQueryId.size() + byNode.values().stream().mapToInt(Queue::size).sum();
+  }
+
+  private class Entry {
+    final Executor executor;
+    final long registeredAt;
+
+    Entry(Executor executor) {
+      this.executor = executor;
+      this.registeredAt = System.nanoTime();
+    }
+
+    boolean isStale(long now) {
+      return now - registeredAt > timeToLive;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.concurrent.ExecutorService;
+
+public class PoolStats {
+  private final String name;
+  private final int activeCount;
+  private final int queueDepth;
+  private final long rejectedCount;
+
+  /**
+   * Snapshot of the load of a worker pool
+   *
+   * @param name name of the pool
+   * @param activeCount threads running a task, -1 if not tracked
+   * @param queueDepth tasks waiting for a thread, -1 if not tracked
+   * @param rejectedCount tasks turned away because the pool was full
+   */
+  PoolStats(String name, int activeCount, int queueDepth, long rejectedCount) {
+    this.name = name;
+    this.activeCount = activeCount;
+    this.queueDepth = queueDepth;
+    this.rejectedCount = rejectedCount;
+  }
+
+  /**
+   * Get the statistics of an executor. Executors that are not worker pools, such as virtual
+   * thread executors, only report their name
+   *
+   * @param name name of the executor
+   * @param executor executor to report on
+   * @return statistics of the executor
+   */
+  static PoolStats of(String name, ExecutorService executor) {
+    if (executor instanceof WorkerPool) {
+      return ((WorkerPool) executor).getStats();
+    }
+    return new PoolStats(name, -1, -1, 0);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getActiveCount() {
+    return activeCount;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s ACTIVE-%d QUEUED-%d REJECTED-%d", name, activeCount, queueDepth, rejectedCount);
+  }
+}
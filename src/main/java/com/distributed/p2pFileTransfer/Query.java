@@ -9,18 +9,21 @@ public class Query {
   final String body;
   final UUID id;
   final Node destination;
+  final Command command;
 
   /**
    * Used to represent Queries within the system. All fields are final to prevent modifications
-   * after creation. Each instance have a UUID that can be used to identify it.
+   * after creation. Each instance have a UUID that can be used to identify it, created by {@link
+   * QueryId#next()}.
    *
    * @param body query as given in the problem definition
    * @param destination node representing the destination of query
    */
   private Query(String body, Node destination) {
-    this.id = UUID.randomUUID();
-    this.body = body.replaceAll("<id>", id.toString());
+    this.id = QueryId.next();
+    this.body = CommandBuilder.withQueryId(body, id);
     this.destination = destination;
+    this.command = Command.of(this.body);
   }
 
   /**
@@ -34,6 +37,17 @@ public class Query {
     return new Query(body, destination);
   }
 
+  /**
+   * Create a copy of this query to another destination. The copy gets its own id, so the answers
+   * of the two destinations are told apart
+   *
+   * @param destination destination node
+   * @return copy of the query
+   */
+  Query copyTo(Node destination) {
+    return new Query(body.replace(id.toString(), CommandBuilder.ID_PLACEHOLDER), destination);
+  }
+
   /**
    * Create copies of same query to multiple destinations
    *
@@ -2,8 +2,15 @@ package com.distributed.p2pFileTransfer;
 
 import java.net.DatagramSocket;
 import java.net.SocketException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -13,20 +20,37 @@ class QueryDispatcher {
   private ExecutorService executorService;
   private Logger logger;
   private long dispatchedCount = 0;
+  private final NodeTable<LatencyHistory> latencies = new NodeTable<>();
+  private final HedgeBudget hedgeBudget;
+  private final AtomicInteger hedgedCount = new AtomicInteger();
 
   QueryDispatcher(AbstractFileTransferService fileTransferService)
       throws SocketException {
+    this(fileTransferService, new HedgeBudget(Configuration.getHedgeBudget() / 100.0, 10));
+  }
+
+  /**
+   * Create a dispatcher sending on the socket of the query listener of a service
+   *
+   * @param fileTransferService service the dispatcher belongs to
+   * @param hedgeBudget caps the copies sent by hedged queries
+   */
+  QueryDispatcher(AbstractFileTransferService fileTransferService, HedgeBudget hedgeBudget)
+      throws SocketException {
     this.fileTransferService = fileTransferService;
+    this.hedgeBudget = hedgeBudget;
     socket = fileTransferService.getQueryListener().getSocket();
-    executorService = Executors.newCachedThreadPool();
+    executorService = ExecutorProvider.fromConfiguration().newExecutor("query-dispatcher");
     logger = Logger.getLogger(this.getClass().getName());
   }
 
   private Executor getQueryExecutor(Query query){
     Executor executor;
-    String queryType = query.body.split(" ")[1];
-    switch (queryType) {
-      case "SER":
+    if (query.command == null) {
+      throw new IllegalStateException("Unexpected value: " + query.body);
+    }
+    switch (query.command) {
+      case SER:
         executor =
                 new FileSearchQueryExecutor(
                         query,
@@ -35,37 +59,103 @@ class QueryDispatcher {
                         fileTransferService.getFileHandler()
                 );
         break;
-      case "UNREG":
-      case "JOIN":
-      case "LEAVE":
-      case "REG":
+      case UNREG:
+      case JOIN:
+      case LEAVE:
+      case PING:
+      case REG:
         executor =
                 new AcknowledgedQueryExecutor(query, socket, fileTransferService.getQueryListener());
         break;
-      case "SEROK":
-      case "UNROK":
-      case "JOINOK":
-      case "LEAVEOK":
-      case "REGOK":
+      case SEROK:
+      case UNROK:
+      case JOINOK:
+      case LEAVEOK:
+      case PONG:
+      case REGOK:
         executor =
                 new UnAcknowledgedQueryExecutor(query, socket, fileTransferService.getQueryListener());
         break;
       default:
-        throw new IllegalStateException("Unexpected value: " + queryType);
+        throw new IllegalStateException("Unexpected value: " + query.command);
     }
     return executor;
   }
 
   /**
-   * Used to dispatch a query to a single node
+   * Used to dispatch a query to a single node. Queries that are not answered, such as responses,
+   * are sent on the calling thread. The result can be waited for or acted on when it arrives
+   *
+   * @param query query to dispatch
+   * @return result of query
+   * @throws RejectedExecutionException if the dispatcher pool is full
+   */
+  CompletableFuture<QueryResult> dispatchOne(Query query) {
+    if (Configuration.isAsyncExecutors()) {
+      return dispatchOneAsync(query);
+    }
+    dispatchedCount++;
+    Executor executor = getQueryExecutor(query);
+    if (executor instanceof UnAcknowledgedQueryExecutor) {
+      return CompletableFuture.completedFuture(((UnAcknowledgedQueryExecutor) executor).call());
+    }
+    CompletableFuture<QueryResult> future =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return executor.call();
+              } catch (Exception e) {
+                throw new CompletionException(e);
+              }
+            },
+            executorService);
+    if (executor instanceof AcknowledgedQueryExecutor) {
+      future.whenComplete(
+          (result, e) -> {
+            if (future.isCancelled()) {
+              ((AcknowledgedQueryExecutor) executor).cancel();
+            }
+          });
+    }
+    return future;
+  }
+
+  /**
+   * Used to send a query that is answered elsewhere or not at all, such as a search whose matches
+   * are answered directly to the node that started it. The query is sent once on the calling
+   * thread and no response is waited for
+   *
+   * @param query query to send
+   * @return result of sending the query
+   */
+  QueryResult dispatchOneWay(Query query) {
+    dispatchedCount++;
+    return new UnAcknowledgedQueryExecutor(query, socket, fileTransferService.getQueryListener())
+        .call();
+  }
+
+  /**
+   * Used to dispatch a query to a single node without holding a thread while waiting for the
+   * response. Acknowledged queries resolve when the response arrives or the response timeout
+   * passes, other queries resolve once sent
    *
    * @param query query to dispatch
    * @return result of query
    */
-  Future<QueryResult> dispatchOne(Query query) {
+  CompletableFuture<QueryResult> dispatchOneAsync(Query query) {
     dispatchedCount++;
     Executor executor = getQueryExecutor(query);
-    return executorService.submit(executor);
+    if (executor instanceof AcknowledgedQueryExecutor) {
+      return ((AcknowledgedQueryExecutor) executor)
+          .callAsync(Configuration.getResponseTimeout(), TimeUnit.MILLISECONDS);
+    }
+    try {
+      return CompletableFuture.completedFuture(executor.call());
+    } catch (Exception e) {
+      CompletableFuture<QueryResult> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
   }
 
   /**
@@ -86,22 +176,191 @@ class QueryDispatcher {
    * @param queries queries to dispatch
    * @return result of any successful queries if any, else failure
    */
-  Future<QueryResult> dispatchAny(List<Query> queries) {
-    dispatchedCount += queries.size();
-    List<Executor> executors = queries.stream().map(this::getQueryExecutor).collect(Collectors.toList());
-    Callable<QueryResult> dispatchTack = () -> {
-      QueryResult result = null;
+  CompletableFuture<QueryResult> dispatchAny(List<Query> queries) {
+    return dispatchAny(queries, result -> result.getState() == 0);
+  }
+
+  /**
+   * Dispatch all the given queries at once and take the first result accepted. The queries still
+   * outstanding are then cancelled, they stop waiting for their responses and are not sent again
+   *
+   * @param queries queries to dispatch
+   * @param accept tells if a result is good enough
+   * @return first result accepted, or null once every query finished without one
+   */
+  CompletableFuture<QueryResult> dispatchAny(List<Query> queries, Predicate<QueryResult> accept) {
+    return dispatchAny(queries, accept, result -> {});
+  }
+
+  /**
+   * Dispatch all the given queries at once and take the first result accepted, seeing every
+   * result on the way. Cancelled queries give no result
+   *
+   * @param queries queries to dispatch
+   * @param accept tells if a result is good enough
+   * @param onResult called with each result before it is tested
+   * @return first result accepted, or null once every query finished without one
+   */
+  CompletableFuture<QueryResult> dispatchAny(
+      List<Query> queries, Predicate<QueryResult> accept, Consumer<QueryResult> onResult) {
+    CompletableFuture<QueryResult> first = new CompletableFuture<>();
+    AtomicInteger outstanding = new AtomicInteger(queries.size());
+    List<CompletableFuture<QueryResult>> probes = new ArrayList<>();
+    for (Query query : queries) {
+      CompletableFuture<QueryResult> probe;
       try {
-        result = executorService.invokeAny(executors);
-      } catch (ExecutionException | InterruptedException e) {
-        e.printStackTrace();
+        probe = dispatchOne(query);
+      } catch (RejectedExecutionException e) {
+        probe = new CompletableFuture<>();
+        probe.completeExceptionally(e);
       }
-      return result;
-    };
-    return executorService.submit(dispatchTack);
+      probes.add(probe);
+      probe.whenComplete(
+          (result, e) -> {
+            if (result != null) {
+              onResult.accept(result);
+              if (accept.test(result)) {
+                first.complete(result);
+              }
+            }
+            if (outstanding.decrementAndGet() == 0) {
+              first.complete(null);
+            }
+          });
+    }
+    if (queries.isEmpty()) {
+      first.complete(null);
+    }
+    first.whenComplete((result, e) -> probes.forEach(probe -> probe.cancel(false)));
+    return first;
+  }
+
+  /**
+   * Dispatch a query without holding a thread and send a copy to a backup node if the destination
+   * is slow. The copy is sent once the query has waited longer than the 95th percentile of the
+   * recent answer times of its destination, if the hedge budget allows. The first answer wins and
+   * the other copy is cancelled. A search answer without files, such as the answer of a node that
+   * already saw the search, only wins once no other copy is outstanding. Nothing is hedged until
+   * the destination answered a few queries
+   *
+   * @param query query to dispatch
+   * @param backup picks a node the query was not sent to yet, returns null if there is none
+   * @return first answer, or the last failure if no copy was answered
+   */
+  CompletableFuture<QueryResult> dispatchHedged(Query query, Supplier<Node> backup) {
+    if (!hedgeBudget.isEnabled()) {
+      return dispatchOneAsync(query);
+    }
+    hedgeBudget.earn();
+    long hedgeAfter =
+        latencies.computeIfAbsent(query.destination, node -> new LatencyHistory(32)).percentile(95);
+    CompletableFuture<QueryResult> first = new CompletableFuture<>();
+    AtomicInteger outstanding = new AtomicInteger(1);
+    AtomicReference<QueryResult> fallback = new AtomicReference<>();
+    List<CompletableFuture<QueryResult>> sent = new CopyOnWriteArrayList<>();
+    sent.add(dispatchTimed(query, first, outstanding, fallback));
+    if (hedgeAfter >= 0) {
+      HashedTimerWheel.Timeout hedge =
+          fileTransferService
+              .getQueryListener()
+              .getTimerWheel()
+              .schedule(
+                  () -> {
+                    if (first.isDone() || !hedgeBudget.trySpend()) {
+                      return;
+                    }
+                    Node node = backup.get();
+                    if (node == null) {
+                      hedgeBudget.refund();
+                      return;
+                    }
+                    hedgedCount.incrementAndGet();
+                    logger.log(
+                        Level.INFO,
+                        String.format(
+                            "%s slow to answer query %s, hedging to %s",
+                            query.destination, query.id, node));
+                    outstanding.incrementAndGet();
+                    CompletableFuture<QueryResult> copy =
+                        dispatchTimed(query.copyTo(node), first, outstanding, fallback);
+                    sent.add(copy);
+                    if (first.isDone()) {
+                      copy.cancel(false);
+                    }
+                  },
+                  hedgeAfter,
+                  TimeUnit.NANOSECONDS);
+      first.whenComplete((result, e) -> hedge.cancel());
+    }
+    first.whenComplete((result, e) -> sent.forEach(copy -> copy.cancel(false)));
+    return first;
+  }
+
+  /**
+   * Dispatch one copy of a hedged query and record its answer time
+   *
+   * @param query copy to dispatch
+   * @param first completed with the first answer of any copy
+   * @param outstanding copies not finished yet, the last one to finish completes first
+   * @param fallback best result that did not win, completes first when no copy is outstanding
+   * @return result of the copy
+   */
+  private CompletableFuture<QueryResult> dispatchTimed(
+      Query query,
+      CompletableFuture<QueryResult> first,
+      AtomicInteger outstanding,
+      AtomicReference<QueryResult> fallback) {
+    long start = System.nanoTime();
+    CompletableFuture<QueryResult> copy = dispatchOneAsync(query);
+    copy.whenComplete(
+        (result, e) -> {
+          if (result != null && result.getState() == 0) {
+            latencies
+                .computeIfAbsent(query.destination, node -> new LatencyHistory(32))
+                .record(System.nanoTime() - start);
+            if (!isEmptySearchAnswer(result)) {
+              first.complete(result);
+              return;
+            }
+            fallback.set(result);
+          } else if (result != null) {
+            fallback.compareAndSet(null, result);
+          }
+          if (outstanding.decrementAndGet() == 0) {
+            QueryResult best = fallback.get();
+            if (best != null) {
+              first.complete(best);
+            } else {
+              first.completeExceptionally(e);
+            }
+          }
+        });
+    return copy;
+  }
+
+  /** @return true if a result is a SEROK listing no files */
+  private static boolean isEmptySearchAnswer(QueryResult result) {
+    Message message = result.getMessage();
+    return message != null
+        && message.getCommand() == Command.SEROK
+        && message.getFileNames().isEmpty();
+  }
+
+  /**
+   * Get the load of the dispatcher pool
+   *
+   * @return statistics of the dispatcher pool
+   */
+  PoolStats getPoolStats() {
+    return PoolStats.of("query-dispatcher", executorService);
   }
 
   public long getDispatchedCount() {
     return dispatchedCount;
   }
+
+  /** @return number of copies sent by hedged queries */
+  long getHedgedCount() {
+    return hedgedCount.get();
+  }
 }
@@ -0,0 +1,26 @@
+package com.distributed.p2pFileTransfer;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class QueryId {
+  private static final long VERSION_MASK = 0xF000L;
+  private static final long VERSION = 0x8000L;
+  private static final long NODE_PREFIX = (new SecureRandom().nextLong() & ~VERSION_MASK) | VERSION;
+  private static final AtomicLong COUNTER = new AtomicLong();
+
+  /**
+   * Ids of queries and results created by this node. An id is a prefix drawn once per node start
+   * followed by a counter, so creating an id is a single atomic increment instead of a draw from
+   * the shared secure random generator. The prefix carries UUID version 8 so the ids never collide
+   * with the random ids of nodes still using version 4. Ids stay UUIDs so nodes using the text
+   * format see no difference
+   */
+  private QueryId() {}
+
+  /** @return id unique to this node start */
+  static UUID next() {
+    return new UUID(NODE_PREFIX, COUNTER.incrementAndGet());
+  }
+}
@@ -2,64 +2,184 @@ package com.distributed.p2pFileTransfer;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 class QueryListener implements Runnable {
   private final AbstractFileTransferService fileTransferService;
-  private ExecutorService executorService;
-  private DatagramSocket socket;
-  private boolean terminate = false;
-  private final HashMap<Node, List<Executor>> pendingExecutors;
-  private Logger logger;
-  private long queryCount = 0;
+  protected ExecutorService executorService;
+  private final ExecutorService searchExecutor;
+  protected DatagramSocket socket;
+  protected volatile boolean terminate = false;
+  private final PendingResponseTable pendingResponses;
+  private final HashedTimerWheel timerWheel;
+  private final ReplayCache replayCache;
+  private final ReplayCache seenSearches;
+  private final RateLimiter rateLimiter;
+  private final FairQueue fairQueue;
+  private DatagramCoalescer coalescer;
+  private final NodeTable<RttEstimator> rttEstimators = new NodeTable<>();
+  private final FailureDetector failureDetector;
+  protected Logger logger;
+  protected final AtomicLong queryCount = new AtomicLong();
   private long answeredCount = 0;
-  private final Set<String> pendingSearchQueries = ConcurrentHashMap.newKeySet();
+  private final NodeTable<Boolean> binaryPeers = new NodeTable<>();
 
   public QueryListener(AbstractFileTransferService fileTransferService, int port)
       throws SocketException {
-    this.fileTransferService = fileTransferService;
-    executorService = Executors.newCachedThreadPool();
-    pendingExecutors = new HashMap<>();
+    this(fileTransferService);
     socket = new DatagramSocket(null);
     socket.setReuseAddress(true);
     socket.bind(new InetSocketAddress(port));
     socket.setSoTimeout(1000);
+  }
+
+  /**
+   * Used by listener implementations that open their own socket
+   *
+   * @param fileTransferService file transfer service the listener belongs to
+   */
+  protected QueryListener(AbstractFileTransferService fileTransferService) {
+    this.fileTransferService = fileTransferService;
+    ExecutorProvider executorProvider = ExecutorProvider.fromConfiguration();
+    executorService = executorProvider.newExecutor("query-listener");
+    searchExecutor = executorProvider.newExecutor("search");
+    rateLimiter = new RateLimiter(Configuration.getRateLimits(), Configuration.getRateLimit());
+    fairQueue =
+        new FairQueue(
+            executorService, Configuration.getThreadPoolSize(), Configuration.getThreadQueueSize());
+    pendingResponses =
+        new PendingResponseTable(Configuration.getResponseTimeout(), TimeUnit.MILLISECONDS);
+    timerWheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 512, "query-timer");
+    timerWheel.schedule(this::expirePendingResponses, 1, TimeUnit.SECONDS);
+    timerWheel.schedule(this::expireRateLimits, 1, TimeUnit.SECONDS);
+    replayCache =
+        new ReplayCache(timerWheel, Configuration.getResponseTimeout(), TimeUnit.MILLISECONDS);
+    seenSearches =
+        new ReplayCache(timerWheel, Configuration.getSearchSeenWindow(), TimeUnit.MILLISECONDS);
+    failureDetector =
+        new FailureDetector(
+            Configuration.getHeartbeatInterval(),
+            TimeUnit.MILLISECONDS,
+            Configuration.getPhiSuspect(),
+            Configuration.getPhiDead());
     logger = Logger.getLogger(this.getClass().getName());
   }
 
+  /**
+   * Create the listener implementation selected in the configuration. <b>nio</b> gives a selector
+   * based listener with pooled buffers, <b>sharded</b> gives blocking listeners on several sockets
+   * sharing the port, anything else gives the blocking socket listener
+   *
+   * @param fileTransferService file transfer service the listener belongs to
+   * @param port port to listen on
+   * @return query listener bound to the port
+   * @throws SocketException if unable to bind to the port
+   */
+  static QueryListener create(AbstractFileTransferService fileTransferService, int port)
+      throws SocketException {
+    if ("nio".equals(Configuration.getQueryListener())) {
+      return new NioQueryListener(
+          fileTransferService,
+          port,
+          Configuration.getBufferPoolSize(),
+          Configuration.isDirectBuffers());
+    }
+    if ("sharded".equals(Configuration.getQueryListener())) {
+      return new ShardedQueryListener(fileTransferService, port, Configuration.getListenerShards());
+    }
+    return new QueryListener(fileTransferService, port);
+  }
+
   public DatagramSocket getSocket() {
     return socket;
   }
 
   @Override
   public void run() {
+    receive(socket);
+    while (socket.isBound()) {
+      socket.disconnect();
+      socket.close();
+    }
+  }
+
+  /**
+   * Receive datagrams on a socket and queue their messages until the listener is stopped
+   *
+   * @param socket socket to receive on, must have a timeout so that stopping is noticed
+   */
+  void receive(DatagramSocket socket) {
+    byte[] buffer = new byte[65536];
+    DatagramPacket incoming = new DatagramPacket(buffer, buffer.length);
     while (!terminate) {
-      byte[] buffer = new byte[65536];
-      DatagramPacket incoming = new DatagramPacket(buffer, buffer.length);
+      incoming.setLength(buffer.length);
       try {
         socket.receive(incoming);
-        queryCount++;
-        String message = new String(buffer).split("\0")[0];
-        Node origin = new Node(incoming.getAddress(), incoming.getPort());
-        executorService.submit(new ListenerThread(message, origin));
+        queryCount.incrementAndGet();
+        Node origin = NodeRegistry.lookup((InetSocketAddress) incoming.getSocketAddress());
+        for (Message message :
+            DatagramCoalescer.unpack(
+                ByteBuffer.wrap(buffer, 0, incoming.getLength()),
+                command -> admit(origin, command))) {
+          submit(message, origin);
+        }
+      } catch (IllegalArgumentException e) {
+        logger.log(Level.WARNING, String.format("Dropped malformed datagram: %s", e.getMessage()));
       } catch (SocketTimeoutException e) {
         logger.log(Level.FINE, "Listener timeout");
       } catch (IOException e) {
         throw new RuntimeException("IO exception in socket listener");
       }
     }
-    while (socket.isBound()) {
-      socket.disconnect();
-      socket.close();
+  }
+
+  /**
+   * Check the rate limit of the sender before a received message is parsed
+   *
+   * @param origin node which sent the message
+   * @param command command of the message, null if unknown
+   * @return true if the message is within the rate limit of the sender
+   */
+  boolean admit(Node origin, Command command) {
+    if (rateLimiter.tryAcquire(origin, command)) {
+      return true;
+    }
+    logger.log(Level.FINE, String.format("Rate limited %s from %s", command, origin));
+    return false;
+  }
+
+  /**
+   * Queue a received message for handling. Messages are handled round robin across senders. The
+   * message is dropped if its sender has too many messages queued or the listener pool is full
+   *
+   * @param message message received
+   * @param origin node which sent the message
+   */
+  void submit(Message message, Node origin) {
+    if (!fairQueue.submit(origin, new ListenerThread(message, origin))) {
+      logger.log(Level.FINE, String.format("Dropped %s from %s: queue full", message, origin));
     }
   }
 
+  /**
+   * Handle a message received from a node. Runs on the calling thread
+   *
+   * @param message message received
+   * @param origin node which sent the message
+   */
+  void handleMessage(Message message, Node origin) {
+    new ListenerThread(message, origin).run();
+  }
+
   /**
    * Used by executors to tell query listener to notify them when a message is received from a node
    *
@@ -67,13 +187,18 @@ class QueryListener implements Runnable {
    * @param executor who is expecting the message
    */
   public void registerForResponse(Node node, Executor executor) {
-    synchronized (pendingExecutors) {
-      if (pendingExecutors.containsKey(node)) {
-        pendingExecutors.get(node).add(executor);
-      } else {
-        pendingExecutors.put(node, new LinkedList<>(Collections.singletonList(executor)));
-      }
-    }
+    pendingResponses.register(node, executor);
+  }
+
+  /**
+   * Used by executors to tell query listener to notify them when a response to a query is
+   * received. Only responses carrying the query id (SEROK) are matched this way
+   *
+   * @param queryId id of the query the executor sent
+   * @param executor who is expecting the message
+   */
+  public void registerForResponse(UUID queryId, Executor executor) {
+    pendingResponses.register(queryId, executor);
   }
 
   /**
@@ -83,8 +208,123 @@ class QueryListener implements Runnable {
    * @param executor who wants to stop notifications
    */
   public void unRegisterForResponse(Node node, Executor executor) {
-    synchronized (pendingExecutors) {
-      pendingExecutors.get(node).remove(executor);
+    pendingResponses.unRegister(node, executor);
+  }
+
+  /**
+   * Used by executors to unregister from the response to a query
+   *
+   * @param queryId id of the query it previously registered for
+   */
+  public void unRegisterForResponse(UUID queryId) {
+    pendingResponses.unRegister(queryId);
+  }
+
+  /** @return number of executors waiting for a response */
+  int getPendingResponseCount() {
+    return pendingResponses.size();
+  }
+
+  private void expirePendingResponses() {
+    int expired = pendingResponses.expire();
+    if (expired > 0) {
+      logger.log(Level.WARNING, String.format("%d pending responses expired", expired));
+    }
+    if (!terminate) {
+      timerWheel.schedule(this::expirePendingResponses, 1, TimeUnit.SECONDS);
+    }
+  }
+
+  private void expireRateLimits() {
+    rateLimiter.expire();
+    if (!terminate) {
+      timerWheel.schedule(this::expireRateLimits, 1, TimeUnit.SECONDS);
+    }
+  }
+
+  /** @return number of messages dropped for exceeding the rate limit of their sender */
+  long getRateLimitedCount() {
+    return rateLimiter.getDroppedCount();
+  }
+
+  /**
+   * Get the timer shared by all executors to enforce query deadlines
+   *
+   * @return timer wheel of this listener
+   */
+  HashedTimerWheel getTimerWheel() {
+    return timerWheel;
+  }
+
+  /**
+   * Get the coalescer that combines messages to the same node. Created on first use
+   *
+   * @return coalescer sending on the socket of this listener or null if coalescing is disabled
+   */
+  synchronized DatagramCoalescer getCoalescer() {
+    if (coalescer == null && Configuration.isCoalescing()) {
+      coalescer =
+          new DatagramCoalescer(
+              socket,
+              Configuration.getCoalescingWindow(),
+              TimeUnit.MICROSECONDS,
+              Configuration.getCoalescingMaxSize());
+    }
+    return coalescer;
+  }
+
+  /**
+   * Check if messages to a node can be sent in the binary format. A node accepts binary messages
+   * if both nodes advertised the binary codec in their JOIN or JOINOK
+   *
+   * @param node destination node
+   * @return true if the node accepts binary messages
+   */
+  boolean isBinaryPeer(Node node) {
+    return binaryPeers.contains(node);
+  }
+
+  private void updateBinaryPeer(Node node, Message message) {
+    if (Configuration.isBinaryCodec() && BinaryCodec.advertisesBinary(message)) {
+      binaryPeers.put(node, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Get the round trip time estimate of a node. Used by executors to decide when to retransmit
+   *
+   * @param node node the query is sent to
+   * @return round trip time estimate of the node
+   */
+  RttEstimator getRttEstimator(Node node) {
+    return rttEstimators.computeIfAbsent(node, key -> new RttEstimator());
+  }
+
+  /** @return failure detector fed by the messages received from neighbours */
+  FailureDetector getFailureDetector() {
+    return failureDetector;
+  }
+
+  /**
+   * Answer a retransmitted request with the response sent to the original. Nothing is sent if the
+   * original is still being handled
+   *
+   * @param key key of the request in the replay cache
+   * @param origin node which sent the request
+   */
+  private void replay(Object key, Node origin) {
+    String response = replayCache.getResponse(key);
+    if (response == null) {
+      logger.log(Level.FINE, String.format("Dropped duplicate %s from %s", key, origin));
+      return;
+    }
+    logger.log(Level.INFO, String.format("Replaying response to duplicate %s from %s", key, origin));
+    fileTransferService.getQueryDispatcher().dispatchOne(Query.createQuery(response, origin));
+  }
+
+  private void notifyExecutors(Node origin, Message message) {
+    for (Executor executor : pendingResponses.get(origin)) {
+      executor.notify(message);
     }
   }
 
@@ -94,10 +334,16 @@ class QueryListener implements Runnable {
 
   public void stop() {
     terminate = true;
+    timerWheel.stop();
+    synchronized (this) {
+      if (coalescer != null) {
+        coalescer.stop();
+      }
+    }
   }
 
   public long getQueryCount() {
-    return queryCount;
+    return queryCount.get();
   }
 
   public long getAnsweredCount(){
@@ -105,11 +351,11 @@ class QueryListener implements Runnable {
   }
 
   private class ListenerThread implements Runnable {
-    String message;
+    Message message;
     Node origin;
     FileHandler fileHandler;
 
-    public ListenerThread(String message, Node origin) {
+    public ListenerThread(Message message, Node origin) {
       this.message = message;
       this.origin = origin;
       fileHandler = fileTransferService.getFileHandler();
@@ -117,106 +363,334 @@ class QueryListener implements Runnable {
 
     @Override
     public void run() {
-      String[] data = message.split(" ");
-      String queryType = data[1];
-      switch (queryType) {
-        case "SEROK":
-        case "REGOK":
-        case "UNROK": // check and change this to UNREGOK if needed
-        case "JOINOK":
-        case "LEAVEOK":
-          synchronized (pendingExecutors) {
-            List<Executor> executors = new LinkedList<>(pendingExecutors.get(origin));
-            for (Executor executor : executors) {
-              executor.notify(message);
-            }
+      try {
+        handle();
+      } catch (IllegalArgumentException e) {
+        logger.log(
+            Level.WARNING,
+            String.format("Dropped malformed %s from %s: %s", message, origin, e.getMessage()));
+      }
+    }
+
+    private void handle() {
+      Command command = message.getCommand();
+      if (command == null) {
+        throw new IllegalStateException("Unexpected value: " + message);
+      }
+      failureDetector.heartbeat(origin, System.nanoTime());
+      switch (command) {
+        case SEROK:
+          Executor executor = pendingResponses.get(message.getQueryId());
+          if (executor != null) {
+            executor.notify(message);
+          } else {
+            notifyExecutors(origin, message);
           }
           break;
-        case "SER":
-          String fileName = data[4].replaceAll("\"", "").replaceAll("_", " ");
-          UUID uuid = UUID.fromString(data[5]);
-          FileSearchRunner fileSearchRunner = new FileSearchRunner(fileName, origin, uuid);
-          executorService.execute(fileSearchRunner);
+        case JOINOK:
+          updateBinaryPeer(origin, message);
+          notifyExecutors(origin, message);
+          break;
+        case REGOK:
+        case UNROK:
+        case LEAVEOK:
+        case PONG:
+          notifyExecutors(origin, message);
+          break;
+        case PING:
+          fileTransferService
+              .getQueryDispatcher()
+              .dispatchOne(
+                  Query.createQuery(fileTransferService.getCommandBuilder().getPongCommand(), origin));
           break;
-        case "JOIN":
+        case SER:
+          UUID uuid = message.getQueryId();
+          if (!replayCache.begin(uuid)) {
+            replay(uuid, origin);
+            break;
+          }
+          UUID searchId = message.getSearchId();
+          if (!markSearchSeen(searchId)) {
+            // a search answered directly only gets answers from nodes with matches
+            if (message.isDirectReply()) {
+              replayCache.complete(uuid, null);
+            } else {
+              replySeen(origin, uuid, searchId);
+            }
+            break;
+          }
+          int hops = message.getHops() < 0 ? Configuration.getSearchHops() : message.getHops();
+          long budget =
+              message.getBudget() < 0 ? Configuration.getSearchDeadline() : message.getBudget();
+          Runnable searchRunner;
+          if (message.isDirectReply()) {
+            searchRunner = new DirectSearchRunner(message, origin, hops - 1, budget);
+          } else {
+            searchRunner =
+                new FileSearchRunner(
+                    message.getSearchName(),
+                    origin,
+                    uuid,
+                    hops - 1,
+                    searchId,
+                    message.getFanout(),
+                    budget);
+          }
           try {
-            Node node = new Node(InetAddress.getByName(data[2]), Integer.parseInt(data[3]));
-            JoinRunner joinRunner = new JoinRunner(node);
-            executorService.execute(joinRunner);
+            searchExecutor.execute(searchRunner);
+          } catch (RejectedExecutionException e) {
+            replayCache.forget(uuid);
+            if (!message.isDirectReply()) {
+              replyBusy(origin, uuid);
+            }
+          }
+          break;
+        case JOIN:
+          // the joining node becomes a neighbour, so it is interned before its codec is recorded
+          updateBinaryPeer(Node.of(origin.getIpAddress(), origin.getPort()), message);
+          try {
+            Node node = message.getSender();
+            String key = membershipKey(Command.JOIN, node);
+            if (!replayCache.begin(key)) {
+              replay(key, origin);
+              break;
+            }
+            submitMembership(origin, key, new JoinRunner(node));
           } catch (UnknownHostException e) {
             logger.log(Level.SEVERE, e.toString());
           }
           break;
-        case "LEAVE":
-          Node node = null;
+        case LEAVE:
+          binaryPeers.remove(origin);
           try {
-            node = new Node(InetAddress.getByName(data[2]), Integer.parseInt(data[3]));
-            LeaveRunner leaveRunner = new LeaveRunner(node);
-            executorService.execute(leaveRunner);
+            Node node = message.getSender();
+            String key = membershipKey(Command.LEAVE, node);
+            if (!replayCache.begin(key)) {
+              replay(key, origin);
+              break;
+            }
+            submitMembership(origin, key, new LeaveRunner(node));
           } catch (UnknownHostException e) {
-            e.printStackTrace();
+            logger.log(Level.SEVERE, e.toString());
           }
+          break;
         default:
-          throw new IllegalStateException("Unexpected value: " + queryType);
+          throw new IllegalStateException("Unexpected value: " + command);
       }
     }
   }
 
+  /**
+   * Queue the handling of a JOIN or LEAVE behind the other messages of its sender. If the queue
+   * is full the request is not remembered, so the retransmission of the sender is handled once
+   * the load has dropped
+   *
+   * @param origin node which sent the request
+   * @param key replay cache key of the request
+   * @param runner handling of the request
+   */
+  private void submitMembership(Node origin, String key, Runnable runner) {
+    if (!fairQueue.submit(origin, runner)) {
+      replayCache.forget(key);
+      logger.log(Level.INFO, String.format("Listener queue full, %s dropped", key));
+    }
+  }
+
+  /**
+   * Tell a node its search was not handled because this node is overloaded. The search is not
+   * remembered so a retransmission is handled if the load has dropped
+   *
+   * @param origin node which sent the search
+   * @param queryId id of the search
+   */
+  private void replyBusy(Node origin, UUID queryId) {
+    logger.log(Level.INFO, String.format("Search pool full, search %s answered busy", queryId));
+    Query busy =
+        Query.createQuery(fileTransferService.getCommandBuilder().getSearchBusyCommand(queryId), origin);
+    fileTransferService.getQueryDispatcher().dispatchOne(busy);
+  }
+
+  /**
+   * Remember a search so that copies of it reaching this node again are not handled. Searches are
+   * remembered for the search seen window
+   *
+   * @param searchId id of the search
+   * @return true if the search was not seen before
+   */
+  boolean markSearchSeen(UUID searchId) {
+    if (!seenSearches.begin(searchId)) {
+      return false;
+    }
+    seenSearches.complete(searchId, null);
+    return true;
+  }
+
+  /**
+   * Answer a copy of a search that already reached this node by another path with no files. The
+   * files of this node are returned on the path the search first came by
+   */
+  private void replySeen(Node origin, UUID queryId, UUID searchId) {
+    logger.log(Level.FINE, String.format("Search %s already seen, query %s", searchId, queryId));
+    String body =
+        fileTransferService.getCommandBuilder().getSearchOkCommand(Collections.emptyList(), queryId);
+    Query response = Query.createQuery(body, origin);
+    replayCache.complete(queryId, response.body);
+    fileTransferService.getQueryDispatcher().dispatchOne(response);
+  }
+
+  /**
+   * Get the load of the pools of this listener
+   *
+   * @return statistics of the listener and search pools
+   */
+  List<PoolStats> getPoolStats() {
+    return Arrays.asList(
+        PoolStats.of("query-listener", executorService), PoolStats.of("search", searchExecutor));
+  }
+
+  private static String membershipKey(Command command, Node node) {
+    return command + " " + node;
+  }
+
   private class FileSearchRunner implements Runnable {
     String searchQuery;
     Node sender;
     UUID queryId;
+    int hops;
+    UUID searchId;
+    int fanout;
+    long budget;
+    long received = System.nanoTime();
 
-    public FileSearchRunner(String searchQuery, Node sender, UUID queryId) {
+    /**
+     * Answers a search with the files of this node and of the nodes the search is forwarded to
+     *
+     * @param searchQuery name searched for
+     * @param sender node the search came from, it is not forwarded back
+     * @param queryId id of the query to answer
+     * @param hops number of times the search may still be forwarded, not forwarded if 0 or less
+     * @param searchId id of the search, kept when forwarded
+     * @param fanout number of neighbours the search is forwarded to, 0 for every neighbour
+     * @param budget milliseconds from now the sender waits for the answer
+     */
+    public FileSearchRunner(
+        String searchQuery,
+        Node sender,
+        UUID queryId,
+        int hops,
+        UUID searchId,
+        int fanout,
+        long budget) {
       this.searchQuery = searchQuery;
       this.sender = sender;
       this.queryId = queryId;
+      this.hops = hops;
+      this.searchId = searchId;
+      this.fanout = fanout;
+      this.budget = budget;
     }
 
     @Override
     public void run() {
-      Query responseQuery;
-      if (pendingSearchQueries.contains(searchQuery)){
-        String body = fileTransferService.getCommandBuilder().getSearchOkCommand(Collections.singletonList("<ignore>"), queryId);
-        responseQuery = Query.createQuery(body, sender);
-        try {
-          QueryResult result =
-                  fileTransferService.getQueryDispatcher().dispatchOne(responseQuery).get();
-          logger.log(
-                  Level.INFO,
-                  String.format(
-                          "response %s send to message id %s", responseQuery.body, queryId.toString()));
-        } catch (InterruptedException | ExecutionException e) {
-          e.printStackTrace();
-        }
-        return;
-      }
-      pendingSearchQueries.add(searchQuery);
       FileHandler fileHandler = fileTransferService.getFileHandler();
       List<String> files = fileHandler.searchForFile(searchQuery);
-      try {
-        List<String> neighbourFiles = fileTransferService.searchForFileSkippingSource(searchQuery,sender).get();
-        pendingSearchQueries.remove(searchQuery);
-        for (String file : neighbourFiles) {
-           if(!file.equals("<ignore>") && !files.contains(file)){
-             files.add(file);
-           }
+      // time left to wait for the neighbours, keeping back enough to answer the sender in time
+      long margin = Configuration.getSearchHopMargin();
+      long timeout =
+          budget - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - received) - margin;
+      if (hops > 0 && timeout <= 0) {
+        logger.log(Level.INFO, String.format("Search %s not forwarded, budget spent", queryId));
+      } else if (hops > 0) {
+        try {
+          // answered from the callback once the neighbours answered or the timeout passed
+          fileTransferService
+              .searchForFileSkippingSource(searchQuery, sender, hops, searchId, fanout, timeout)
+              .whenComplete(
+                  (neighbourFiles, e) -> {
+                    if (e != null) {
+                      logger.log(Level.SEVERE, e.toString());
+                    } else {
+                      for (String file : neighbourFiles) {
+                        if (!file.equals("<ignore>") && !files.contains(file)) {
+                          files.add(file);
+                        }
+                      }
+                    }
+                    answer(files);
+                  });
+          return;
+        } catch (RejectedExecutionException e) {
+          logger.log(Level.INFO, String.format("Search %s not forwarded: %s", queryId, e.getMessage()));
         }
-      } catch (InterruptedException | ExecutionException e) {
-        logger.log(Level.SEVERE, e.toString());
       }
+      answer(files);
+    }
+
+    /**
+     * Send the files found to the node the search came from
+     *
+     * @param files files of this node and its neighbours
+     */
+    private void answer(List<String> files) {
       String body = fileTransferService.getCommandBuilder().getSearchOkCommand(files, queryId);
-      responseQuery = Query.createQuery(body, sender);
-      try {
-        QueryResult result =
-            fileTransferService.getQueryDispatcher().dispatchOne(responseQuery).get();
-        incrementAnsweredCount();
-        logger.log(
-            Level.INFO,
-            String.format(
-                "response %s send to message id %s", responseQuery.body, queryId.toString()));
-      } catch (InterruptedException | ExecutionException e) {
-        e.printStackTrace();
+      Query responseQuery = Query.createQuery(body, sender);
+      replayCache.complete(queryId, responseQuery.body);
+      fileTransferService.getQueryDispatcher().dispatchOne(responseQuery);
+      incrementAnsweredCount();
+      logger.log(
+          Level.INFO,
+          String.format(
+              "response %s send to message id %s", responseQuery.body, queryId.toString()));
+    }
+  }
+
+  private class DirectSearchRunner implements Runnable {
+    Message search;
+    Node sender;
+    int hops;
+    long budget;
+    long received = System.nanoTime();
+
+    /**
+     * Answers a search answered directly. Matching files of this node are sent straight to the node
+     * that started the search, then the search is forwarded and forgotten. Nothing is sent back to
+     * the node the search came from and no thread waits on the neighbours
+     *
+     * @param search search received
+     * @param sender node the search came from, it is not forwarded back
+     * @param hops number of times the search may still be forwarded, not forwarded if 0 or less
+     * @param budget milliseconds from now the node that started the search waits for answers
+     */
+    DirectSearchRunner(Message search, Node sender, int hops, long budget) {
+      this.search = search;
+      this.sender = sender;
+      this.hops = hops;
+      this.budget = budget;
+    }
+
+    @Override
+    public void run() {
+      replayCache.complete(search.getQueryId(), null);
+      List<String> files = fileTransferService.getFileHandler().searchForFile(search.getSearchName());
+      if (!files.isEmpty()) {
+        try {
+          String body =
+              fileTransferService
+                  .getCommandBuilder()
+                  .getSearchOkCommand(files, search.getSearchId());
+          fileTransferService
+              .getQueryDispatcher()
+              .dispatchOneWay(Query.createQuery(body, search.getSender()));
+          incrementAnsweredCount();
+        } catch (UnknownHostException e) {
+          logger.log(Level.SEVERE, e.toString());
+        }
+      }
+      long margin = Configuration.getSearchHopMargin();
+      long timeout =
+          budget - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - received) - margin;
+      if (hops > 0 && timeout > 0) {
+        fileTransferService.forwardSearch(search, sender, hops, (int) timeout);
       }
     }
   }
@@ -232,7 +706,13 @@ class QueryListener implements Runnable {
     public void run() {
       fileTransferService.getNetwork().addNeighbour(other);
       Query joinOk =
-          Query.createQuery(fileTransferService.getCommandBuilder().getJoinOkCommand(), other);
+          Query.createQuery(
+              fileTransferService
+                  .getCommandBuilder()
+                  .getJoinOkCommand(0, Configuration.isBinaryCodec()),
+              other);
+      replayCache.complete(membershipKey(Command.JOIN, other), joinOk.body);
+      replayCache.forget(membershipKey(Command.LEAVE, other));
       try {
         fileTransferService.getQueryDispatcher().dispatchOne(joinOk).get();
         logger.log(Level.INFO, String.format("join ok to node %s", other.toString()));
@@ -255,6 +735,8 @@ class QueryListener implements Runnable {
       fileTransferService.getNetwork().removeNeighbour(other);
       Query leaveOk =
           Query.createQuery(fileTransferService.getCommandBuilder().getLeaveOkCommand(), other);
+      replayCache.complete(membershipKey(Command.LEAVE, other), leaveOk.body);
+      replayCache.forget(membershipKey(Command.JOIN, other));
       try {
         fileTransferService.getQueryDispatcher().dispatchOne(leaveOk).get();
         logger.log(Level.INFO, String.format("leave ok to node %s", other.toString()));
@@ -2,16 +2,41 @@ package com.distributed.p2pFileTransfer;
 
 public class QueryResult extends Result {
     final Query query;
+    final Message message;
 
     /**
      * Used to represent result of a query
      *
      * @param body  response message as given in the problem definition
-     * @param state state 0 represent success other values represent failures
+     * @param state state 0 represent success other values represent failures. 1 failed to send,
+     *              2 interrupted while waiting, 3 no response received in time
      * @param query reference to the query that generated this result
      */
     public QueryResult(String body, int state, Query query) {
         super(body, state);
         this.query = query;
+        this.message = null;
+    }
+
+    /**
+     * Used to represent the result of a query answered with a message
+     *
+     * @param message response message
+     * @param state   state 0 represent success other values represent failures
+     * @param query   reference to the query that generated this result
+     */
+    public QueryResult(Message message, int state, Query query) {
+        super(message.toString(), state);
+        this.query = query;
+        this.message = message;
+    }
+
+    /**
+     * Get the parsed response
+     *
+     * @return response message or null if no response was received
+     */
+    Message getMessage() {
+        return message;
     }
 }
@@ -0,0 +1,114 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RateLimiter {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private final double[] rates;
+  private final ConcurrentHashMap<Node, Buckets> origins = new ConcurrentHashMap<>();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  /**
+   * Token bucket rate limits on messages received from each node. Every node has a bucket per
+   * command which fills at the rate of the command and holds at most one second of tokens, a
+   * message is admitted if a token is left in the bucket of its command. Messages with an unknown
+   * command share the default rate
+   *
+   * @param rates messages per second admitted from one node for each command
+   * @param defaultRate messages per second for commands without a rate, 0 or less for no limit
+   */
+  RateLimiter(Map<Command, Double> rates, double defaultRate) {
+    Command[] commands = Command.values();
+    this.rates = new double[commands.length + 1];
+    for (Command command : commands) {
+      this.rates[command.ordinal()] = rates.getOrDefault(command, defaultRate);
+    }
+    this.rates[commands.length] = defaultRate;
+  }
+
+  /**
+   * Take a token for a message received from a node
+   *
+   * @param origin node which sent the message
+   * @param command command of the message, null if unknown
+   * @return true if the message is admitted, false if it should be dropped
+   */
+  boolean tryAcquire(Node origin, Command command) {
+    return tryAcquire(origin, command, System.nanoTime());
+  }
+
+  boolean tryAcquire(Node origin, Command command, long now) {
+    int index = command == null ? rates.length - 1 : command.ordinal();
+    if (rates[index] <= 0) {
+      return true;
+    }
+    boolean admitted = origins.computeIfAbsent(origin, key -> new Buckets(now)).take(index, now);
+    if (!admitted) {
+      droppedCount.incrementAndGet();
+    }
+    return admitted;
+  }
+
+  /**
+   * Forget nodes whose buckets have refilled, they are sending within their limits
+   *
+   * @return number of nodes forgotten
+   */
+  int expire() {
+    long now = System.nanoTime();
+    int expired = 0;
+    for (Map.Entry<Node, Buckets> each : origins.entrySet()) {
+      if (each.getValue().isIdle(now) && origins.remove(each.getKey(), each.getValue())) {
+        expired++;
+      }
+    }
+    return expired;
+  }
+
+  long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  private class Buckets {
+    private final double[] tokens = new double[rates.length];
+    private final long[] filledAt = new long[rates.length];
+
+    Buckets(long now) {
+      for (int i = 0; i < rates.length; i++) {
+        tokens[i] = capacity(i);
+        filledAt[i] = now;
+      }
+    }
+
+    synchronized boolean take(int index, long now) {
+      fill(index, now);
+      if (tokens[index] < 1) {
+        return false;
+      }
+      tokens[index]--;
+      return true;
+    }
+
+    synchronized boolean isIdle(long now) {
+      for (int i = 0; i < rates.length; i++) {
+        if (rates[i] > 0 && now - filledAt[i] < capacity(i) / rates[i] * SECOND) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void fill(int index, long now) {
+      double elapsed = (double) (now - filledAt[index]) / SECOND;
+      tokens[index] = Math.min(capacity(index), tokens[index] + elapsed * rates[index]);
+      filledAt[index] = now;
+    }
+
+    private double capacity(int index) {
+      return Math.max(rates[index], 1);
+    }
+  }
+}
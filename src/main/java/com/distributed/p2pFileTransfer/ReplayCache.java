@@ -0,0 +1,74 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+class ReplayCache {
+  private static final String IN_PROGRESS = "";
+  private final ConcurrentHashMap<Object, String> responses = new ConcurrentHashMap<>();
+  private final HashedTimerWheel timerWheel;
+  private final long window;
+
+  /**
+   * Remembers requests that were recently handled so that retransmitted copies are not handled
+   * twice. A request is identified by a key, the query id for searches and the sender for joins and
+   * leaves. Keys are compared with equals, so query ids are matched on their two longs. Once
+   * handled the response is kept for the window so a duplicate can be answered with the same
+   * response
+   *
+   * @param timerWheel timer used to forget handled requests
+   * @param window how long a handled request is remembered
+   * @param unit unit of window
+   */
+  ReplayCache(HashedTimerWheel timerWheel, long window, TimeUnit unit) {
+    this.timerWheel = timerWheel;
+    this.window = unit.toMillis(window);
+  }
+
+  /**
+   * Mark a request as being handled
+   *
+   * @param key key identifying the request
+   * @return true if the request was not seen before and must be handled
+   */
+  boolean begin(Object key) {
+    return responses.putIfAbsent(key, IN_PROGRESS) == null;
+  }
+
+  /**
+   * Record the response sent for a request. The request is forgotten after the window
+   *
+   * @param key key identifying the request
+   * @param response response sent to the request, null if none was sent
+   */
+  void complete(Object key, String response) {
+    String value = response == null ? IN_PROGRESS : response;
+    responses.put(key, value);
+    timerWheel.schedule(() -> responses.remove(key, value), window, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Forget a request so that the next copy of it is handled again. Used when a later request
+   * undoes the effect of an earlier one, such as a leave after a join
+   *
+   * @param key key identifying the request
+   */
+  void forget(Object key) {
+    responses.remove(key);
+  }
+
+  /**
+   * Get the response sent for a request
+   *
+   * @param key key identifying the request
+   * @return response or null if the request is still being handled or was not seen
+   */
+  String getResponse(Object key) {
+    String response = responses.get(key);
+    return response == null || response.isEmpty() ? null : response;
+  }
+
+  int size() {
+    return responses.size();
+  }
+}
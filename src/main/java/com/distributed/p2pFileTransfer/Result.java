@@ -16,7 +16,7 @@ public abstract class Result {
      */
     public Result(String body, int state) {
         this.body = body;
-        this.id = UUID.randomUUID();
+        this.id = QueryId.next();
         this.state = state;
     }
 
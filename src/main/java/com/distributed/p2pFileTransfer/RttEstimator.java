@@ -0,0 +1,56 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.concurrent.TimeUnit;
+
+class RttEstimator {
+  static final long MIN_RTO = TimeUnit.MILLISECONDS.toNanos(100);
+  static final long MAX_RTO = TimeUnit.SECONDS.toNanos(10);
+  private static final long INITIAL_RTO = TimeUnit.SECONDS.toNanos(1);
+  private long smoothedRtt = -1;
+  private long rttVariation;
+  private long retransmitTimeout = INITIAL_RTO;
+
+  /**
+   * Round trip time estimate for a single neighbour, computed as in RFC 6298. The retransmit
+   * timeout is the smoothed round trip time plus four times its variation, bounded between 100 ms
+   * and 10 s. Until the first sample is taken the timeout is 1 s
+   */
+  RttEstimator() {}
+
+  /**
+   * Add a round trip time measurement. Only measure responses to queries that were sent once, a
+   * response to a retransmitted query can not be matched to a transmission
+   *
+   * @param rtt measured round trip time in nanoseconds
+   */
+  synchronized void sample(long rtt) {
+    if (smoothedRtt < 0) {
+      smoothedRtt = rtt;
+      rttVariation = rtt / 2;
+    } else {
+      rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+      smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+    }
+    retransmitTimeout = Math.min(MAX_RTO, Math.max(MIN_RTO, smoothedRtt + 4 * rttVariation));
+  }
+
+  /**
+   * Get the time to wait for a response before sending a query again
+   *
+   * @param unit unit of the returned value
+   * @return retransmit timeout
+   */
+  synchronized long getRetransmitTimeout(TimeUnit unit) {
+    return unit.convert(retransmitTimeout, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the smoothed round trip time
+   *
+   * @param unit unit of the returned value
+   * @return smoothed round trip time or -1 if no sample has been taken
+   */
+  synchronized long getSmoothedRtt(TimeUnit unit) {
+    return smoothedRtt < 0 ? -1 : unit.convert(smoothedRtt, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,39 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class SearchResult extends ArrayList<String> {
+    private final int asked;
+    private final int answered;
+
+    /**
+     * Files found by a search, sorted by name. A search is complete when every node this node
+     * asked answered before the search deadline, otherwise the files are those found in time
+     *
+     * @param files    files found
+     * @param asked    searches this node sent, -1 if the nodes reached are not known
+     * @param answered searches answered with a SEROK before the deadline
+     */
+    SearchResult(Collection<String> files, int asked, int answered) {
+        super(files);
+        this.asked = asked;
+        this.answered = answered;
+    }
+
+    public int getAsked() {
+        return asked;
+    }
+
+    public int getAnswered() {
+        return answered;
+    }
+
+    /**
+     * @return true if every node asked answered before the deadline, never when the nodes asked are
+     * not known
+     */
+    public boolean isComplete() {
+        return asked >= 0 && answered >= asked;
+    }
+}
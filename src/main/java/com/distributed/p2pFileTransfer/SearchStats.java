@@ -0,0 +1,70 @@
+package com.distributed.p2pFileTransfer;
+
+public class SearchStats {
+  private final SearchStrategy strategy;
+  private long searches;
+  private long rounds;
+  private long messages;
+  private long answered;
+  private long firstFileMillis;
+
+  /**
+   * Counts of the searches started by this node with a strategy. A round is one search of the
+   * neighbours with a hop limit, a message is one SER sent by this node
+   *
+   * @param strategy strategy counted
+   */
+  SearchStats(SearchStrategy strategy) {
+    this.strategy = strategy;
+  }
+
+  /**
+   * Count a finished search
+   *
+   * @param searchRounds rounds the search took
+   * @param searchMessages SER messages this node sent for the search
+   * @param searchFirstFileMillis milliseconds until the first file was found, -1 if none was
+   */
+  synchronized void record(int searchRounds, int searchMessages, long searchFirstFileMillis) {
+    searches++;
+    rounds += searchRounds;
+    messages += searchMessages;
+    if (searchFirstFileMillis >= 0) {
+      answered++;
+      firstFileMillis += searchFirstFileMillis;
+    }
+  }
+
+  public SearchStrategy getStrategy() {
+    return strategy;
+  }
+
+  public synchronized long getSearches() {
+    return searches;
+  }
+
+  public synchronized long getRounds() {
+    return rounds;
+  }
+
+  public synchronized long getMessages() {
+    return messages;
+  }
+
+  /** @return mean milliseconds until the first file of the searches that found a file */
+  public synchronized double getMeanFirstFileMillis() {
+    return answered == 0 ? 0.0 : (double) firstFileMillis / answered;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%s SEARCHES-%d ROUNDS-%d MESSAGES-%d MESSAGES/SEARCH-%.1f FIRST-FILE-MS-%.1f",
+        strategy,
+        searches,
+        rounds,
+        messages,
+        searches == 0 ? 0.0 : (double) messages / searches,
+        getMeanFirstFileMillis());
+  }
+}
@@ -0,0 +1,13 @@
+package com.distributed.p2pFileTransfer;
+
+/**
+ * How a search started by this node reaches the network. <b>FLOOD</b> sends the search to every
+ * neighbour with the full hop limit. <b>EXPANDING_RING</b> starts with a small hop limit learned
+ * from recent searches and searches again with a larger limit while too few files are found.
+ * <b>RANDOM_WALK</b> sends a few walkers that are each forwarded to one neighbour per hop
+ */
+public enum SearchStrategy {
+  FLOOD,
+  EXPANDING_RING,
+  RANDOM_WALK
+}
@@ -0,0 +1,117 @@
+package com.distributed.p2pFileTransfer;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+class ShardedQueryListener extends QueryListener {
+  private static final SocketOption<Boolean> SO_REUSEPORT = findReusePort();
+  private final List<DatagramChannel> shards;
+
+  /**
+   * Query listener that binds several sockets to the port with SO_REUSEPORT and receives on each
+   * of them from its own thread, so packet intake is spread over cores. The kernel picks the socket
+   * of a datagram from its source address, so a neighbour always lands on the same shard. All
+   * shards hand messages to the same pending response table and replay cache, and {@link
+   * #getSocket()} returns the first shard so every reply is sent from one socket. Falls back to a
+   * single socket where SO_REUSEPORT is not available
+   *
+   * @param fileTransferService file transfer service the listener belongs to
+   * @param port port to listen on
+   * @param shardCount number of sockets to bind
+   * @throws SocketException if unable to open or bind a socket
+   */
+  ShardedQueryListener(AbstractFileTransferService fileTransferService, int port, int shardCount)
+      throws SocketException {
+    super(fileTransferService);
+    int count = Math.max(shardCount, 1);
+    if (SO_REUSEPORT == null && count > 1) {
+      logger.log(Level.WARNING, "SO_REUSEPORT is not available, listening on a single socket");
+      count = 1;
+    }
+    shards = new ArrayList<>(count);
+    try {
+      for (int i = 0; i < count; i++) {
+        shards.add(open(port));
+      }
+    } catch (IOException e) {
+      closeShards();
+      SocketException exception = new SocketException("Unable to bind shard: " + e.getMessage());
+      exception.initCause(e);
+      throw exception;
+    }
+    socket = shards.get(0).socket();
+  }
+
+  /**
+   * Looked up by reflection since the option only exists from Java 9 and is only supported on some
+   * platforms
+   */
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> findReusePort() {
+    try (DatagramChannel channel = DatagramChannel.open()) {
+      SocketOption<Boolean> option =
+          (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+      return channel.supportedOptions().contains(option) ? option : null;
+    } catch (ReflectiveOperationException | IOException e) {
+      return null;
+    }
+  }
+
+  private static DatagramChannel open(int port) throws IOException {
+    DatagramChannel channel = DatagramChannel.open();
+    try {
+      channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      if (SO_REUSEPORT != null) {
+        channel.setOption(SO_REUSEPORT, true);
+      }
+      channel.bind(new InetSocketAddress(port));
+      channel.socket().setSoTimeout(1000);
+      return channel;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  int getShardCount() {
+    return shards.size();
+  }
+
+  @Override
+  public void run() {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 1; i < shards.size(); i++) {
+      DatagramSocket shard = shards.get(i).socket();
+      Thread thread = new Thread(() -> receive(shard), "query-listener-shard-" + i);
+      thread.start();
+      threads.add(thread);
+    }
+    receive(socket);
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    closeShards();
+  }
+
+  private void closeShards() {
+    for (DatagramChannel shard : shards) {
+      try {
+        shard.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, e.toString());
+      }
+    }
+  }
+}
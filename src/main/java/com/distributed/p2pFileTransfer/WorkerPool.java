@@ -0,0 +1,60 @@
+package com.distributed.p2pFileTransfer;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class WorkerPool extends ThreadPoolExecutor {
+  private final String name;
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  /**
+   * Thread pool that counts the tasks it turns away. A task is rejected when every thread is busy
+   * and the queue is full, the submitter gets a RejectedExecutionException and decides how to shed
+   * the work
+   *
+   * @param name name of the pool, used in statistics
+   * @param corePoolSize threads kept while idle
+   * @param maximumPoolSize maximum number of threads
+   * @param keepAlive time an idle thread above the core size is kept
+   * @param unit unit of keepAlive
+   * @param queue queue holding tasks waiting for a thread
+   * @param threadFactory factory creating the threads
+   */
+  WorkerPool(
+      String name,
+      int corePoolSize,
+      int maximumPoolSize,
+      long keepAlive,
+      TimeUnit unit,
+      BlockingQueue<Runnable> queue,
+      ThreadFactory threadFactory) {
+    super(corePoolSize, maximumPoolSize, keepAlive, unit, queue, threadFactory);
+    this.name = name;
+    setRejectedExecutionHandler(
+        (task, executor) -> {
+          rejectedCount.incrementAndGet();
+          throw new RejectedExecutionException(String.format("%s pool is full", name));
+        });
+  }
+
+  String getName() {
+    return name;
+  }
+
+  long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * Get the current load of the pool
+   *
+   * @return statistics of the pool
+   */
+  PoolStats getStats() {
+    return new PoolStats(name, getActiveCount(), getQueue().size(), rejectedCount.get());
+  }
+}
@@ -12,6 +12,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -69,4 +71,88 @@ class AcknowledgedQueryExecutorTest {
     assertEquals(result.query, query);
     listenerThread.join(10);
   }
+
+  @Test
+  void checkAsyncQueryDispatch() throws SocketException, ExecutionException, InterruptedException {
+    Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT);
+    CommandBuilder commandBuilder = CommandBuilder.getInstance(senderNode);
+    Node receiver = new Node(InetAddress.getLoopbackAddress(), LISTENER_PORT);
+    Query query = Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings"), receiver);
+    String expectedResponse =
+        commandBuilder.getSearchOkCommand(Stream.of("baby.mpeg").collect(Collectors.toList()), query.id);
+    SocketListener listener = new SocketListener(LISTENER_PORT, query.body, expectedResponse);
+    Thread listenerThread = new Thread(listener);
+    listenerThread.start();
+
+    AcknowledgedQueryExecutor searchQueryExecutor =
+        new AcknowledgedQueryExecutor(query, queryListener.getSocket(), queryListener);
+    QueryResult result = searchQueryExecutor.callAsync(5, TimeUnit.SECONDS).get();
+    assertEquals(0, result.state);
+    assertEquals(expectedResponse, result.body);
+    listenerThread.join(10);
+  }
+
+  @Test
+  void asyncQueryTimeout() throws ExecutionException, InterruptedException {
+    Node receiver = new Node(InetAddress.getLoopbackAddress(), LISTENER_PORT);
+    Query query = Query.createQuery(CommandBuilder.getInstance(receiver).getJoinCommand(), receiver);
+    AcknowledgedQueryExecutor executor =
+        new AcknowledgedQueryExecutor(query, queryListener.getSocket(), queryListener);
+    QueryResult result = executor.callAsync(50, TimeUnit.MILLISECONDS).get();
+    assertEquals(3, result.state);
+  }
+
+  @Test
+  void retransmitLostQuery() throws IOException, ExecutionException, InterruptedException {
+    Node receiver = new Node(InetAddress.getLoopbackAddress(), LISTENER_PORT);
+    String joinOk = CommandBuilder.getInstance(receiver).getJoinOkCommand();
+    Query query = Query.createQuery(CommandBuilder.getInstance(receiver).getJoinCommand(), receiver);
+    try (DatagramSocket lossyNode = new DatagramSocket(LISTENER_PORT)) {
+      lossyNode.setSoTimeout(5000);
+      AcknowledgedQueryExecutor executor =
+          new AcknowledgedQueryExecutor(query, queryListener.getSocket(), queryListener);
+      Future<QueryResult> resultFuture = executor.callAsync(10, TimeUnit.SECONDS);
+      byte[] buffer = new byte[1024];
+      DatagramPacket incoming = new DatagramPacket(buffer, buffer.length);
+      lossyNode.receive(incoming); // first copy is lost
+      incoming.setLength(buffer.length);
+      lossyNode.receive(incoming);
+      assertEquals(query.body, new String(buffer, 0, incoming.getLength(), StandardCharsets.UTF_8));
+      byte[] response = joinOk.getBytes(StandardCharsets.UTF_8);
+      lossyNode.send(
+          new DatagramPacket(response, response.length, incoming.getAddress(), incoming.getPort()));
+      QueryResult result = resultFuture.get(5, TimeUnit.SECONDS);
+      assertEquals(0, result.state);
+      assertEquals(joinOk, result.body);
+    } catch (TimeoutException e) {
+      fail("No response after retransmission");
+    }
+  }
+
+  @Test
+  void searchNotRetransmittedPastBudget() throws IOException {
+    Node receiver = new Node(InetAddress.getLoopbackAddress(), LISTENER_PORT);
+    String search =
+        CommandBuilder.getInstance(receiver)
+            .getSearchCommand("Lord of the rings", 2, QueryId.next(), 0, 1500);
+    Query query = Query.createQuery(search, receiver);
+    try (DatagramSocket lossyNode = new DatagramSocket(LISTENER_PORT)) {
+      AcknowledgedQueryExecutor executor =
+          new AcknowledgedQueryExecutor(query, queryListener.getSocket(), queryListener);
+      executor.callAsync(10, TimeUnit.SECONDS);
+      byte[] buffer = new byte[1024];
+      DatagramPacket incoming = new DatagramPacket(buffer, buffer.length);
+      lossyNode.setSoTimeout(1000);
+      lossyNode.receive(incoming);
+      // sent again after the 1 s retransmit timeout, the next would come after the budget
+      lossyNode.setSoTimeout(1500);
+      incoming.setLength(buffer.length);
+      lossyNode.receive(incoming);
+      assertEquals(query.body, new String(buffer, 0, incoming.getLength(), StandardCharsets.UTF_8));
+      lossyNode.setSoTimeout(3000);
+      incoming.setLength(buffer.length);
+      assertThrows(SocketTimeoutException.class, () -> lossyNode.receive(incoming));
+      executor.cancel();
+    }
+  }
 }
@@ -0,0 +1,135 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+  CommandBuilder commandBuilder;
+
+  @BeforeEach
+  void setUp() {
+    commandBuilder = CommandBuilder.getInstance(new Node(InetAddress.getLoopbackAddress(), 5555));
+  }
+
+  private String roundTrip(String message) {
+    byte[] encoded = BinaryCodec.encode(message);
+    assertNotNull(encoded);
+    ByteBuffer buffer = ByteBuffer.wrap(encoded);
+    assertTrue(BinaryCodec.isBinary(buffer));
+    return BinaryCodec.read(buffer).toString();
+  }
+
+  @Test
+  void searchRoundTrip() {
+    String message =
+        Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings"), (Node) null).body;
+    assertEquals(message, roundTrip(message));
+    assertTrue(BinaryCodec.encode(message).length < message.length());
+    String limited =
+        Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings", 2, QueryId.next()), (Node) null)
+            .body;
+    assertEquals(limited, roundTrip(limited));
+    String walker =
+        Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings", 8, QueryId.next(), 1), (Node) null)
+            .body;
+    assertEquals(walker, roundTrip(walker));
+    String budgeted =
+        Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings", 3, QueryId.next(), 0, 19750), (Node) null)
+            .body;
+    assertEquals(budgeted, roundTrip(budgeted));
+    String direct =
+        Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings", 3, QueryId.next(), 0, 19750, true), (Node) null)
+            .body;
+    assertEquals(direct, roundTrip(direct));
+  }
+
+  @Test
+  void searchOkRoundTrip() {
+    List<String> files = Arrays.asList("Lord of the rings", "Harry Potter", "Ωmega");
+    String message = commandBuilder.getSearchOkCommand(files, UUID.randomUUID());
+    assertEquals(message, roundTrip(message));
+    String empty = commandBuilder.getSearchOkCommand(Collections.emptyList(), UUID.randomUUID());
+    assertEquals(empty, roundTrip(empty));
+  }
+
+  @Test
+  void localIdsEncodeCompactly() {
+    List<String> files = Collections.singletonList("Lord of the rings");
+    String local = commandBuilder.getSearchOkCommand(files, QueryId.next());
+    String random = commandBuilder.getSearchOkCommand(files, UUID.randomUUID());
+    assertEquals(local, roundTrip(local));
+    assertTrue(BinaryCodec.encode(local).length <= BinaryCodec.encode(random).length - 6);
+  }
+
+  @Test
+  void searchBusyRoundTrip() {
+    UUID queryId = UUID.randomUUID();
+    String message = commandBuilder.getSearchBusyCommand(queryId);
+    assertEquals(message, roundTrip(message));
+    Message parsed = Message.parse(message);
+    assertTrue(parsed.isSearchFailure());
+    assertTrue(parsed.getFileNames().isEmpty());
+    assertEquals(queryId, parsed.getQueryId());
+    assertEquals(message.length(), parsed.getLength());
+  }
+
+  @Test
+  void membershipRoundTrip() {
+    for (String message :
+        Arrays.asList(
+            commandBuilder.getJoinCommand(),
+            commandBuilder.getLeaveCommand(),
+            commandBuilder.getJoinOkCommand(),
+            commandBuilder.getLeaveOkCommand(9999))) {
+      assertEquals(message, roundTrip(message));
+    }
+  }
+
+  @Test
+  void textMessagesUntouched() {
+    String message = commandBuilder.getJoinOkCommand();
+    ByteBuffer buffer = ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    assertFalse(BinaryCodec.isBinary(buffer));
+    assertEquals(message, BinaryCodec.read(buffer).toString());
+  }
+
+  @Test
+  void negotiationAndBootstrapMessagesStayText() {
+    assertNull(BinaryCodec.encode(commandBuilder.getJoinCommand(true)));
+    assertNull(BinaryCodec.encode(commandBuilder.getJoinOkCommand(0, true)));
+    assertNull(BinaryCodec.encode(commandBuilder.getRegisterCommand("user")));
+    assertTrue(BinaryCodec.advertisesBinary(Message.parse(commandBuilder.getJoinCommand(true))));
+    assertFalse(BinaryCodec.advertisesBinary(Message.parse(commandBuilder.getJoinCommand())));
+  }
+
+  @Test
+  void varint() {
+    ByteBuffer buffer = ByteBuffer.allocate(32);
+    for (long value : new long[] {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE}) {
+      buffer.clear();
+      BinaryCodec.putVarint(buffer, value);
+      buffer.flip();
+      assertEquals(value, BinaryCodec.getVarlong(buffer));
+    }
+  }
+
+  @Test
+  void malformed() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BinaryCodec.decode(ByteBuffer.wrap(new byte[] {(byte) 0x81, 4, 127})));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BinaryCodec.decode(ByteBuffer.wrap(new byte[] {(byte) 0xFF})));
+  }
+}
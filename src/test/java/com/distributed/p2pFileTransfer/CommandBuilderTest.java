@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -146,6 +148,40 @@ class CommandBuilderTest {
     assertEquals(userName, "user");
   }
 
+  @Test
+  void searchQueryLengthCoversId() {
+    Query query = Query.createQuery(commandBuilder.getSearchCommand("file name"), currentNode);
+    String[] data = query.body.split(" ");
+    assertEquals(Integer.parseInt(data[0]), query.body.length());
+    assertEquals(data[5], query.id.toString());
+    assertEquals("\"file_name\"", data[4]);
+  }
+
+  @Test
+  void writeIntoBuffer() {
+    UUID id = UUID.randomUUID();
+    List<String> fileNames = Stream.of("a b", "Ωmega").collect(Collectors.toList());
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    buffer.put((byte) 'x');
+    commandBuilder.writeSearchOkCommand(buffer, fileNames, id);
+    String written = new String(buffer.array(), 1, buffer.position() - 1, StandardCharsets.UTF_8);
+    assertEquals(commandBuilder.getSearchOkCommand(fileNames, id), written);
+    buffer.clear();
+    commandBuilder.writeSearchCommand(buffer, "a b", id);
+    written = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    assertEquals(CommandBuilder.withQueryId(commandBuilder.getSearchCommand("a b"), id), written);
+  }
+
+  @Test
+  void longMessageLength() {
+    List<String> fileNames =
+        IntStream.range(0, 2000).mapToObj(i -> "file" + i).collect(Collectors.toList());
+    String message = commandBuilder.getSearchOkCommand(fileNames, UUID.randomUUID());
+    String[] data = message.split(" ");
+    assertEquals(5, data[0].length());
+    assertEquals(Integer.parseInt(data[0]), message.length() - 1);
+  }
+
   @BeforeEach
   void setUp() throws UnknownHostException {
     currentNode = new Node(InetAddress.getLocalHost(), 5555);
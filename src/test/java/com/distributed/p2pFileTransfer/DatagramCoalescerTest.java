@@ -0,0 +1,117 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatagramCoalescerTest {
+  final int RECEIVER_PORT = 7575;
+  DatagramSocket sender;
+  DatagramSocket receiver;
+  Node receiverNode;
+  CommandBuilder commandBuilder;
+
+  @BeforeEach
+  void setUp() throws SocketException {
+    sender = new DatagramSocket();
+    receiver = new DatagramSocket(RECEIVER_PORT);
+    receiver.setSoTimeout(5000);
+    receiverNode = new Node(InetAddress.getLoopbackAddress(), RECEIVER_PORT);
+    commandBuilder = CommandBuilder.getInstance(receiverNode);
+  }
+
+  @AfterEach
+  void tearDown() {
+    sender.close();
+    receiver.close();
+  }
+
+  private ByteBuffer receive() throws IOException {
+    byte[] buffer = new byte[65536];
+    DatagramPacket incoming = new DatagramPacket(buffer, buffer.length);
+    receiver.receive(incoming);
+    return ByteBuffer.wrap(buffer, 0, incoming.getLength());
+  }
+
+  private static List<String> text(List<Message> messages) {
+    return messages.stream().map(Message::toString).collect(Collectors.toList());
+  }
+
+  @Test
+  void coalesceMessages() throws IOException {
+    DatagramCoalescer coalescer = new DatagramCoalescer(sender, 20, TimeUnit.MILLISECONDS, 1472);
+    List<String> messages =
+        Arrays.asList(
+            commandBuilder.getJoinOkCommand(),
+            commandBuilder.getLeaveOkCommand(),
+            commandBuilder.getSearchOkCommand(Arrays.asList("a", "b c"), UUID.randomUUID()));
+    for (String message : messages) {
+      assertTrue(DatagramCoalescer.accepts(Command.of(message)));
+      coalescer.send(message.getBytes(StandardCharsets.UTF_8), receiverNode);
+    }
+    ByteBuffer datagram = receive();
+    assertTrue(DatagramCoalescer.isBatch(datagram));
+    assertEquals(messages, text(DatagramCoalescer.unpack(datagram)));
+    // the flush counts the datagram after sending it, stopping waits for the flush
+    coalescer.stop();
+    assertEquals(1, coalescer.getDatagramsSent());
+    assertEquals(3, coalescer.getMessagesSent());
+  }
+
+  @Test
+  void singleMessageSentPlain() throws IOException {
+    DatagramCoalescer coalescer = new DatagramCoalescer(sender, 1, TimeUnit.MILLISECONDS, 1472);
+    String message = commandBuilder.getJoinOkCommand();
+    coalescer.send(message.getBytes(StandardCharsets.UTF_8), receiverNode);
+    ByteBuffer datagram = receive();
+    assertFalse(DatagramCoalescer.isBatch(datagram));
+    assertEquals(message, DatagramCoalescer.unpack(datagram).get(0).toString());
+    coalescer.stop();
+  }
+
+  @Test
+  void batchDroppedAfterFlush() throws IOException {
+    DatagramCoalescer coalescer = new DatagramCoalescer(sender, 1, TimeUnit.MILLISECONDS, 1472);
+    String message = commandBuilder.getJoinOkCommand();
+    coalescer.send(message.getBytes(StandardCharsets.UTF_8), receiverNode);
+    receive();
+    // the batch is sent and dropped under its lock, which stopping waits for
+    coalescer.stop();
+    assertEquals(0, coalescer.getPendingBatches());
+  }
+
+  @Test
+  void flushWhenFull() throws IOException {
+    String message = commandBuilder.getJoinOkCommand();
+    int maxSize = 4 + 2 * (2 + message.length());
+    DatagramCoalescer coalescer = new DatagramCoalescer(sender, 10, TimeUnit.SECONDS, maxSize);
+    for (int i = 0; i < 3; i++) {
+      coalescer.send(message.getBytes(StandardCharsets.UTF_8), receiverNode);
+    }
+    ByteBuffer datagram = receive();
+    assertEquals(Arrays.asList(message, message), text(DatagramCoalescer.unpack(datagram)));
+    coalescer.stop();
+    assertEquals(message, DatagramCoalescer.unpack(receive()).get(0).toString());
+  }
+
+  @Test
+  void bootstrapMessagesNotCoalesced() {
+    assertFalse(DatagramCoalescer.accepts(Command.of(commandBuilder.getRegisterCommand("user"))));
+    assertFalse(DatagramCoalescer.accepts(Command.of(commandBuilder.getUnRegisterCommand("user"))));
+  }
+}
@@ -0,0 +1,92 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutorProviderTest {
+
+  private Set<Thread> runBlockingTasks(ExecutorService executor, int tasks)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    CountDownLatch release = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < tasks; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                threads.add(Thread.currentThread());
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+              }));
+    }
+    release.countDown();
+    for (Future<?> future : futures) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    return threads;
+  }
+
+  @Test
+  void boundedCapsThreads() throws Exception {
+    ExecutorProvider provider = ExecutorProvider.create(ExecutorProvider.BOUNDED, 4, 64);
+    assertEquals(ExecutorProvider.BOUNDED, provider.getMode());
+    Set<Thread> threads = runBlockingTasks(provider.newExecutor("bounded-test"), 32);
+    assertTrue(threads.size() <= 4);
+    threads.forEach(thread -> assertTrue(thread.getName().startsWith("bounded-test-")));
+  }
+
+  @Test
+  void boundedRejectsWhenFull() throws Exception {
+    ExecutorService executor = ExecutorProvider.create(ExecutorProvider.BOUNDED, 1, 1).newExecutor("full-test");
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException ignored) {
+          }
+        });
+    executor.execute(() -> {});
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+    PoolStats stats = PoolStats.of("full-test", executor);
+    assertEquals(1, stats.getQueueDepth());
+    assertEquals(1, stats.getRejectedCount());
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void cachedGrowsWithTasks() throws Exception {
+    ExecutorProvider provider = ExecutorProvider.create(ExecutorProvider.CACHED, 4, 64);
+    assertEquals(ExecutorProvider.CACHED, provider.getMode());
+    Set<Thread> threads = runBlockingTasks(provider.newExecutor("cached-test"), 8);
+    assertEquals(8, threads.size());
+  }
+
+  @Test
+  void virtualOrFallback() throws Exception {
+    ExecutorProvider provider = ExecutorProvider.create(ExecutorProvider.VIRTUAL, 4, 64);
+    Set<Thread> threads = runBlockingTasks(provider.newExecutor("virtual-test"), 16);
+    if (provider.getMode().equals(ExecutorProvider.VIRTUAL)) {
+      assertEquals(16, threads.size());
+    } else {
+      assertEquals(ExecutorProvider.BOUNDED, provider.getMode());
+      assertTrue(threads.size() <= 4);
+    }
+  }
+}
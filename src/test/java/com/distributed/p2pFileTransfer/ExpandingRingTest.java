@@ -0,0 +1,59 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpandingRingTest {
+
+  @Test
+  void startFromMedianOfRecentSearches() {
+    ExpandingRing ring = new ExpandingRing(3);
+    assertEquals(1, ring.startingHops(4));
+    ring.record(4);
+    ring.record(2);
+    ring.record(1);
+    assertEquals(2, ring.startingHops(4));
+    assertEquals(1, ring.startingHops(1));
+    ring.record(4);
+    ring.record(4);
+    assertEquals(4, ring.startingHops(4));
+  }
+
+  @Test
+  void probeBelowMedian() {
+    ExpandingRing ring = new ExpandingRing(3);
+    for (int i = 0; i < 3; i++) {
+      ring.record(8);
+    }
+    for (int i = 1; i < ExpandingRing.PROBE_EVERY; i++) {
+      assertEquals(8, ring.startingHops(8));
+    }
+    assertEquals(4, ring.startingHops(8));
+    // hits found by the probes bring the median back down
+    ring.record(4);
+    ring.record(4);
+    assertEquals(4, ring.startingHops(8));
+  }
+
+  @Test
+  void doubleUpToLimit() {
+    assertEquals(2, ExpandingRing.nextHops(1, 4));
+    assertEquals(4, ExpandingRing.nextHops(2, 4));
+    assertEquals(5, ExpandingRing.nextHops(4, 5));
+  }
+
+  @Test
+  void statsPerSearch() {
+    SearchStats stats = new SearchStats(SearchStrategy.EXPANDING_RING);
+    stats.record(1, 2, -1);
+    stats.record(3, 10, 40);
+    assertEquals(2, stats.getSearches());
+    assertEquals(4, stats.getRounds());
+    assertEquals(12, stats.getMessages());
+    assertEquals(40.0, stats.getMeanFirstFileMillis());
+    assertEquals(
+        "EXPANDING_RING SEARCHES-2 ROUNDS-4 MESSAGES-12 MESSAGES/SEARCH-6.0 FIRST-FILE-MS-40.0",
+        stats.toString());
+  }
+}
@@ -0,0 +1,62 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FailureDetectorTest {
+  static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  Node first = new Node(InetAddress.getLoopbackAddress(), 5100);
+  Node second = new Node(InetAddress.getLoopbackAddress(), 5101);
+
+  @Test
+  void suspicionGrowsWithSilence() {
+    FailureDetector detector = new FailureDetector(1, TimeUnit.SECONDS, 8, 16);
+    detector.watch(first, 0);
+    for (int i = 1; i <= 10; i++) {
+      detector.heartbeat(first, i * SECOND);
+    }
+    long last = 10 * SECOND;
+    assertTrue(detector.phi(first, last + SECOND) < 1);
+    assertFalse(detector.isDead(first, last + 2 * SECOND));
+    assertTrue(detector.phi(first, last + 5 * SECOND) >= 8);
+    assertFalse(detector.isDead(first, last + 5 * SECOND));
+    assertTrue(detector.isDead(first, last + 6 * SECOND));
+    assertTrue(detector.phi(first, last + 6 * SECOND) > detector.phi(first, last + 5 * SECOND));
+    assertEquals(6 * SECOND, detector.sinceLastHeard(first, last + 6 * SECOND));
+  }
+
+  @Test
+  void heartbeatClearsSuspicion() {
+    FailureDetector detector = new FailureDetector(1, TimeUnit.SECONDS, 8, 16);
+    detector.watch(first, 0);
+    assertTrue(detector.phi(first, 5 * SECOND) >= 8);
+    detector.heartbeat(first, 5 * SECOND);
+    assertTrue(detector.phi(first, 5 * SECOND) < 1);
+  }
+
+  @Test
+  void onlyWatchedNodes() {
+    FailureDetector detector = new FailureDetector(1, TimeUnit.SECONDS, 8, 16);
+    detector.heartbeat(second, 0);
+    assertEquals(0, detector.phi(second, 60 * SECOND));
+    assertFalse(detector.isDead(second, 60 * SECOND));
+    detector.watch(first, 0);
+    detector.forget(first);
+    assertEquals(0, detector.phi(first, 60 * SECOND));
+  }
+
+  @Test
+  void pingAndPong() {
+    CommandBuilder commandBuilder = CommandBuilder.getInstance(first);
+    Message ping = Message.parse(commandBuilder.getPingCommand());
+    assertEquals(Command.PING, ping.getCommand());
+    assertEquals(Command.PONG, ping.getCommand().getResponse());
+    assertEquals(ping.getLength(), commandBuilder.getPingCommand().length());
+    Message pong = Message.parse(commandBuilder.getPongCommand());
+    assertEquals(Command.PONG, pong.getCommand());
+  }
+}
@@ -0,0 +1,77 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairQueueTest {
+  Node flooder = new Node(InetAddress.getLoopbackAddress(), 5000);
+  Node quiet = new Node(InetAddress.getLoopbackAddress(), 5001);
+
+  @Test
+  void roundRobinAcrossOrigins() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    FairQueue queue = new FairQueue(executor, 1, 16);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(6);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    queue.submit(
+        flooder,
+        () -> {
+          started.countDown();
+          try {
+            blocked.await();
+          } catch (InterruptedException ignored) {
+          }
+        });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    for (int i = 0; i < 4; i++) {
+      queue.submit(flooder, () -> { order.add("flooder"); done.countDown(); });
+    }
+    for (int i = 0; i < 2; i++) {
+      queue.submit(quiet, () -> { order.add("quiet"); done.countDown(); });
+    }
+    blocked.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(
+        Arrays.asList("flooder", "quiet", "flooder", "quiet", "flooder", "flooder"), order);
+    executor.shutdown();
+  }
+
+  @Test
+  void rejectsAbovePerOriginDepth() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    FairQueue queue = new FairQueue(executor, 1, 2);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    queue.submit(
+        flooder,
+        () -> {
+          started.countDown();
+          try {
+            blocked.await();
+          } catch (InterruptedException ignored) {
+          }
+        });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertTrue(queue.submit(flooder, () -> {}));
+    assertTrue(queue.submit(flooder, () -> {}));
+    assertFalse(queue.submit(flooder, () -> {}));
+    assertTrue(queue.submit(quiet, () -> {}));
+    assertEquals(3, queue.size());
+    blocked.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,79 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FoundFilesTest {
+
+  @Test
+  void passOnNewFilesUntilClosed() {
+    List<String> passed = new ArrayList<>();
+    FoundFiles found = new FoundFiles(passed::add, 20000);
+    assertEquals(-1, found.getFirstFileMillis());
+    found.add("b");
+    found.add("a");
+    found.add("b");
+    assertTrue(found.getFirstFileMillis() >= 0);
+    found.close();
+    found.add("c");
+    assertEquals(Arrays.asList("b", "a"), passed);
+    assertEquals(Arrays.asList("a", "b"), found.toResult());
+  }
+
+  @Test
+  void closeCancelsQueriesInFlight() {
+    FoundFiles found = new FoundFiles(file -> {}, 20000);
+    CompletableFuture<QueryResult> answered = new CompletableFuture<>();
+    CompletableFuture<QueryResult> pending = new CompletableFuture<>();
+    found.track(answered);
+    found.track(pending);
+    answered.complete(null);
+    assertFalse(found.whenClosed().isDone());
+    found.close();
+    assertTrue(pending.isCancelled());
+    assertFalse(answered.isCancelled());
+    assertTrue(found.whenClosed().isDone());
+    CompletableFuture<QueryResult> late = new CompletableFuture<>();
+    found.track(late);
+    assertTrue(late.isCancelled());
+  }
+
+  @Test
+  void partialAfterDeadline() throws InterruptedException {
+    Node node = new Node(InetAddress.getLoopbackAddress(), 7611);
+    CommandBuilder commandBuilder = CommandBuilder.getInstance(node);
+    Query query = Query.createQuery(commandBuilder.getSearchCommand("a"), node);
+    FoundFiles found = new FoundFiles(file -> {}, 100);
+    found.asked(2);
+    found.add(answer(commandBuilder, query, "a1"));
+    Thread.sleep(150);
+    found.add(answer(commandBuilder, query, "a2"));
+    SearchResult result = found.toResult();
+    assertEquals(Collections.singletonList("a1"), result);
+    assertEquals(1, result.getAnswered());
+    assertFalse(result.isComplete());
+  }
+
+  @Test
+  void neverCompleteWhenAskedUnknown() {
+    FoundFiles found = new FoundFiles(file -> {}, 20000);
+    assertTrue(found.toResult().isComplete());
+    found.askedUnknown();
+    SearchResult result = found.toResult();
+    assertEquals(-1, result.getAsked());
+    assertFalse(result.isComplete());
+  }
+
+  private static QueryResult answer(CommandBuilder commandBuilder, Query query, String file) {
+    String body = commandBuilder.getSearchOkCommand(Collections.singletonList(file), query.id);
+    return new QueryResult(Message.parse(body), 0, query);
+  }
+}
@@ -10,10 +10,13 @@ import java.io.IOException;
 import java.net.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -53,6 +56,16 @@ class FreeNetFileTransferServiceTest {
     }
   }
 
+  @Test
+  void streamSearchResults() throws ExecutionException, InterruptedException {
+    List<String> streamed = new CopyOnWriteArrayList<>();
+    Future<List<String>> queryResultFuture =
+        fileTransferService.searchForFile("Lord of the rings", SearchStrategy.FLOOD, streamed::add);
+    List<String> result = queryResultFuture.get();
+    assertEquals(3, streamed.size());
+    assertEquals(new HashSet<>(result), new HashSet<>(streamed));
+  }
+
   @Test
   void searchForNonExistingFile() {
     Future<List<String>> queryResultFuture = fileTransferService.searchForFile("Non existing file");
@@ -65,6 +78,60 @@ class FreeNetFileTransferServiceTest {
     }
   }
 
+  @Test
+  void downloadRemovesSilentNeighbours() throws Exception {
+    Node silent = new Node(InetAddress.getByName("127.0.0.1"), 1299);
+    fileTransferService.getNetwork().addNeighbour(silent);
+    assertNull(fileTransferService.downloadFile("Non existing file"));
+    List<Node> neighbours = new ArrayList<>();
+    fileTransferService.getNetwork().getNeighbours().forEachRemaining(neighbours::add);
+    assertFalse(neighbours.contains(silent));
+    assertTrue(neighbours.contains(fileNodeNode));
+  }
+
+  @Test
+  void cancelledSearchStopsWaitingForAnswers() throws Exception {
+    Node silent = new Node(InetAddress.getByName("127.0.0.1"), 1298);
+    fileTransferService.getNetwork().addNeighbour(silent);
+    QueryListener listener = fileTransferService.getQueryListener();
+    try {
+      Future<List<String>> search =
+          fileTransferService.searchForFile("Lord of the rings", SearchStrategy.FLOOD);
+      // the file node answers at once, the search then only waits for the silent neighbour
+      Thread.sleep(500);
+      assertFalse(search.isDone());
+      assertTrue(listener.getPendingResponseCount() > 0);
+      assertTrue(search.cancel(false));
+      long deadline = System.currentTimeMillis() + 1000;
+      while (listener.getPendingResponseCount() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, listener.getPendingResponseCount());
+    } finally {
+      fileTransferService.getNetwork().removeNeighbour(silent);
+    }
+  }
+
+  @Test
+  void searchDeadlineCancelsUnansweredQueries() throws Exception {
+    Node silent = new Node(InetAddress.getByName("127.0.0.1"), 1297);
+    fileTransferService.getNetwork().addNeighbour(silent);
+    QueryListener listener = fileTransferService.getQueryListener();
+    try {
+      SearchResult result =
+          (SearchResult)
+              fileTransferService.searchForFile("Lord of the rings", SearchStrategy.FLOOD).get();
+      assertFalse(result.isComplete());
+      long deadline = System.currentTimeMillis() + 1000;
+      while (listener.getPendingResponseCount() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, listener.getPendingResponseCount());
+    } finally {
+      fileTransferService.getNetwork().removeNeighbour(silent);
+    }
+  }
+
   @BeforeEach
   void setUp() throws SocketException, UnknownHostException, NodeNotFoundException {
     Network networkMock = mock(Network.class);
@@ -117,6 +184,7 @@ class FreeNetFileTransferServiceTest {
     config.setProperty("server_port", "4321");
     config.setProperty("boostrap_server_ip", "127.0.0.1");
     config.setProperty("boostrap_server_port", "1201");
+    config.setProperty("search_deadline", "3000");
   }
 
   private static void deleteDir(File dir) {
@@ -166,7 +234,7 @@ class FreeNetFileTransferServiceTest {
           targetQuery = matcher.group(1);
         }
         String[] data = received.split(" ");
-        UUID id = UUID.fromString(data[data.length - 1]);
+        UUID id = UUID.fromString(data[5]);
         String finalTargetQuery = targetQuery.replaceAll("_", " ");
         List<String> matchingFiles =
             filesInNode.stream()
@@ -0,0 +1,56 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimerWheelTest {
+  HashedTimerWheel timerWheel;
+
+  @BeforeEach
+  void setUp() {
+    timerWheel = new HashedTimerWheel(5, TimeUnit.MILLISECONDS, 8, "test-timer");
+  }
+
+  @AfterEach
+  void tearDown() {
+    timerWheel.stop();
+  }
+
+  @Test
+  void expireAfterDelay() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+    HashedTimerWheel.Timeout timeout = timerWheel.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+    assertTrue(latch.await(2, TimeUnit.SECONDS));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue(elapsed >= 100, "fired early after " + elapsed + " ms");
+    assertTrue(timeout.isExpired());
+    assertFalse(timeout.cancel());
+  }
+
+  @Test
+  void expireAfterSeveralRounds() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(2);
+    timerWheel.schedule(latch::countDown, 12, TimeUnit.MILLISECONDS);
+    timerWheel.schedule(latch::countDown, 130, TimeUnit.MILLISECONDS);
+    assertTrue(latch.await(2, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void cancel() throws InterruptedException {
+    AtomicBoolean fired = new AtomicBoolean(false);
+    HashedTimerWheel.Timeout timeout =
+        timerWheel.schedule(() -> fired.set(true), 20, TimeUnit.MILLISECONDS);
+    assertTrue(timeout.cancel());
+    Thread.sleep(100);
+    assertFalse(fired.get());
+    assertTrue(timeout.isCancelled());
+  }
+}
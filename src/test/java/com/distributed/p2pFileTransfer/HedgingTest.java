@@ -0,0 +1,56 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingTest {
+
+  @Test
+  void percentileOfRecentAnswers() {
+    LatencyHistory history = new LatencyHistory(20);
+    for (int i = 1; i < LatencyHistory.MIN_SAMPLES; i++) {
+      history.record(i);
+    }
+    assertEquals(-1, history.percentile(95));
+    for (int i = LatencyHistory.MIN_SAMPLES; i <= 20; i++) {
+      history.record(i);
+    }
+    assertEquals(19, history.percentile(95));
+    assertEquals(10, history.percentile(50));
+    for (int i = 0; i < 20; i++) {
+      history.record(100);
+    }
+    assertEquals(100, history.percentile(50));
+  }
+
+  @Test
+  void budgetCapsHedges() {
+    HedgeBudget budget = new HedgeBudget(0.05, 2);
+    assertFalse(budget.trySpend());
+    int hedges = 0;
+    for (int i = 0; i < 200; i++) {
+      budget.earn();
+      if (budget.trySpend()) {
+        hedges++;
+      }
+    }
+    assertEquals(10, hedges);
+    for (int i = 0; i < 200; i++) {
+      budget.earn();
+    }
+    assertTrue(budget.trySpend());
+    assertTrue(budget.trySpend());
+    assertFalse(budget.trySpend());
+    budget.refund();
+    assertTrue(budget.trySpend());
+  }
+
+  @Test
+  void disabledWithoutRatio() {
+    HedgeBudget budget = new HedgeBudget(0, 10);
+    assertFalse(budget.isEnabled());
+    budget.earn();
+    assertFalse(budget.trySpend());
+  }
+}
@@ -0,0 +1,143 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTest {
+  CommandBuilder commandBuilder;
+  Node currentNode;
+
+  @BeforeEach
+  void setUp() throws UnknownHostException {
+    currentNode = new Node(InetAddress.getByName("127.0.0.1"), 5555);
+    commandBuilder = CommandBuilder.getInstance(currentNode);
+  }
+
+  @Test
+  void parseSearch() throws UnknownHostException {
+    Query query = Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings"), currentNode);
+    Message message = Message.parse(query.body);
+    assertEquals(Command.SER, message.getCommand());
+    assertEquals(Command.SER, query.command);
+    assertEquals(currentNode, message.getSender());
+    assertEquals("Lord of the rings", message.getSearchName());
+    assertEquals(query.id, message.getQueryId());
+    assertEquals(query.body, message.toString());
+  }
+
+  @Test
+  void searchReadableByOriginalNodes() {
+    Query query =
+        Query.createQuery(
+            commandBuilder.getSearchCommand("Lord of the rings", 3, QueryId.next(), 2, 1500, true),
+            currentNode);
+    // original nodes split on spaces and read the query id from the sixth field
+    String[] data = query.body.split(" ");
+    assertEquals("SER", data[1]);
+    assertEquals("\"Lord_of_the_rings\"", data[4]);
+    assertEquals(query.id, UUID.fromString(data[5]));
+    assertEquals(query.body.length(), Integer.parseInt(data[0]));
+  }
+
+  @Test
+  void parseHopLimitedSearch() throws UnknownHostException {
+    UUID searchId = QueryId.next();
+    Query query =
+        Query.createQuery(commandBuilder.getSearchCommand("Lord of the rings", 3, searchId), currentNode);
+    Message message = Message.parse(query.body);
+    assertEquals(3, message.getHops());
+    assertEquals(searchId, message.getSearchId());
+    assertEquals(query.id, message.getQueryId());
+    assertEquals(query.body.length(), message.getLength());
+    Message legacy = Message.parse(Query.createQuery(commandBuilder.getSearchCommand("a"), currentNode).body);
+    assertEquals(0, message.getFanout());
+    Message walker =
+        Message.parse(Query.createQuery(commandBuilder.getSearchCommand("a", 8, searchId, 1), currentNode).body);
+    assertEquals(8, walker.getHops());
+    assertEquals(searchId, walker.getSearchId());
+    assertEquals(1, walker.getFanout());
+    assertEquals(-1, walker.getBudget());
+    Message budgeted =
+        Message.parse(Query.createQuery(commandBuilder.getSearchCommand("a", 3, searchId, 0, 1500), currentNode).body);
+    assertEquals(3, budgeted.getHops());
+    assertEquals(0, budgeted.getFanout());
+    assertEquals(1500, budgeted.getBudget());
+    assertEquals(searchId, budgeted.getSearchId());
+    assertFalse(budgeted.isDirectReply());
+    Node originator = new Node(InetAddress.getLoopbackAddress(), 7621);
+    Message direct =
+        Message.parse(
+            Query.createQuery(
+                    CommandBuilder.getInstance(originator).getSearchCommand("a b", 3, searchId, 0, 1500, true),
+                    currentNode)
+                .body);
+    assertTrue(direct.isDirectReply());
+    Message forwarded =
+        Message.parse(
+            Query.createQuery(commandBuilder.getForwardedSearchCommand(direct, 2, 1200), currentNode).body);
+    assertTrue(forwarded.isDirectReply());
+    assertEquals(originator, forwarded.getSender());
+    assertEquals("a b", forwarded.getSearchName());
+    assertEquals(2, forwarded.getHops());
+    assertEquals(1200, forwarded.getBudget());
+    assertEquals(searchId, forwarded.getSearchId());
+    assertEquals(-1, legacy.getHops());
+    assertEquals(legacy.getQueryId(), legacy.getSearchId());
+  }
+
+  @Test
+  void parseSearchOk() throws UnknownHostException {
+    List<String> files = Arrays.asList("Lord of the rings", "Ωmega", "a_b");
+    UUID queryId = UUID.randomUUID();
+    String body = commandBuilder.getSearchOkCommand(files, queryId);
+    Message message = Message.parse(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)));
+    assertEquals(Command.SEROK, message.getCommand());
+    assertEquals(body.length(), message.getLength());
+    assertEquals(3, message.getFileCount());
+    assertEquals(Arrays.asList("Lord of the rings", "Ωmega", "a b"), message.getFileNames());
+    assertEquals(queryId, message.getQueryId());
+    assertEquals(currentNode, message.getSender());
+    assertEquals(Message.parse(body), message);
+  }
+
+  @Test
+  void manyFields() {
+    String[] files = new String[100];
+    Arrays.fill(files, "file");
+    Message message =
+        Message.parse(commandBuilder.getSearchOkCommand(Arrays.asList(files), UUID.randomUUID()));
+    assertEquals(106, message.getFieldCount());
+    assertEquals(100, message.getFileNames().size());
+  }
+
+  @Test
+  void capabilityToken() {
+    assertTrue(Message.parse(commandBuilder.getJoinOkCommand(0, true)).hasToken(BinaryCodec.CAPABILITY));
+    assertFalse(Message.parse(commandBuilder.getJoinOkCommand()).hasToken(BinaryCodec.CAPABILITY));
+  }
+
+  @Test
+  void unknownCommand() {
+    assertNull(Message.parse("0012 HELLO 1").getCommand());
+    assertNull(Command.of("0012 HELLO 1"));
+    assertNull(Command.of("0009 JOI"));
+  }
+
+  @Test
+  void malformedFields() {
+    Message message = Message.parse("0014 JOINOK x");
+    assertThrows(NumberFormatException.class, () -> message.getInt(2));
+    assertThrows(IllegalArgumentException.class, () -> message.getId(2));
+    assertThrows(IllegalArgumentException.class, () -> message.getString(3));
+  }
+}
@@ -0,0 +1,36 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkTest {
+
+  @Test
+  void pickNeighboursByScore() {
+    Node low = new Node(InetAddress.getLoopbackAddress(), 7601);
+    Node high = new Node(InetAddress.getLoopbackAddress(), 7602);
+    Node skipped = new Node(InetAddress.getLoopbackAddress(), 7603);
+    Map<Integer, List<Node>> table = new TreeMap<>(Collections.reverseOrder());
+    table.put(0, Arrays.asList(low, skipped));
+    table.put(9, Collections.singletonList(high));
+    Random random = new Random(1);
+    int highPicked = 0;
+    for (int i = 0; i < 1000; i++) {
+      List<Node> picked =
+          Network.pickWeighted(table, 1, Collections.singleton(skipped), random);
+      assertEquals(1, picked.size());
+      assertNotEquals(skipped, picked.get(0));
+      if (picked.get(0).equals(high)) {
+        highPicked++;
+      }
+    }
+    assertTrue(highPicked > 850 && highPicked < 950);
+    assertEquals(
+        new HashSet<>(Arrays.asList(low, high)),
+        new HashSet<>(Network.pickWeighted(table, 5, Collections.singleton(skipped), random)));
+  }
+}
@@ -0,0 +1,69 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeRegistryTest {
+
+  @Test
+  void internBySocketAddress() throws UnknownHostException {
+    InetAddress address = InetAddress.getByName("10.0.0.1");
+    Node node = Node.of(address, 5000);
+    assertSame(node, Node.of(address, 5000));
+    assertSame(node, NodeRegistry.intern(new InetSocketAddress(address, 5000)));
+    assertEquals(node, new Node(address, 5000));
+    assertEquals(node.getId(), new Node(address, 5000).getId());
+    assertNotEquals(node, Node.of(address, 5001));
+  }
+
+  @Test
+  void lookupDoesNotIntern() throws UnknownHostException {
+    InetSocketAddress sender = new InetSocketAddress(InetAddress.getByName("10.0.0.3"), 5000);
+    int size = NodeRegistry.size();
+    Node transientNode = NodeRegistry.lookup(sender);
+    assertEquals(size, NodeRegistry.size());
+    assertEquals(-1, transientNode.getId());
+    assertEquals(transientNode, NodeRegistry.lookup(sender));
+
+    NodeTable<String> table = new NodeTable<>();
+    table.put(transientNode, "transient");
+    assertNull(table.get(transientNode));
+    assertEquals("created", table.computeIfAbsent(transientNode, key -> "created"));
+    assertFalse(table.contains(transientNode));
+
+    Node interned = Node.of(sender.getAddress(), sender.getPort());
+    assertEquals(interned, transientNode);
+    assertEquals(interned.hashCode(), transientNode.hashCode());
+    assertSame(interned, NodeRegistry.lookup(sender));
+  }
+
+  @Test
+  void loopbackAlias() throws UnknownHostException {
+    Node alias = Node.of(InetAddress.getByName("127.0.1.1"), 5000);
+    Node loopback = new Node(InetAddress.getByName("127.0.0.1"), 5000);
+    assertEquals(loopback, alias);
+    assertEquals("127.0.0.1", alias.getIpAddress().getHostAddress());
+  }
+
+  @Test
+  void tableGrowsWithIds() throws UnknownHostException {
+    NodeTable<String> table = new NodeTable<>();
+    InetAddress address = InetAddress.getByName("10.0.0.2");
+    for (int port = 6000; port < 6100; port++) {
+      table.put(Node.of(address, port), "node" + port);
+    }
+    for (int port = 6000; port < 6100; port++) {
+      assertEquals("node" + port, table.get(new Node(address, port)));
+    }
+    Node node = Node.of(address, 6000);
+    table.remove(node);
+    assertFalse(table.contains(node));
+    assertEquals("created", table.computeIfAbsent(node, key -> "created"));
+    assertEquals("created", table.computeIfAbsent(node, key -> "other"));
+  }
+}
@@ -0,0 +1,58 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PendingResponseTableTest {
+  Node node = new Node(InetAddress.getLoopbackAddress(), 5000);
+
+  @Test
+  void matchByQueryId() {
+    PendingResponseTable table = new PendingResponseTable(1, TimeUnit.MINUTES);
+    Executor first = mock(Executor.class);
+    Executor second = mock(Executor.class);
+    UUID firstId = UUID.randomUUID();
+    UUID secondId = UUID.randomUUID();
+    table.register(firstId, first);
+    table.register(secondId, second);
+    assertSame(first, table.get(firstId));
+    assertSame(second, table.get(secondId));
+    table.unRegister(firstId);
+    assertNull(table.get(firstId));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  void matchByNode() {
+    PendingResponseTable table = new PendingResponseTable(1, TimeUnit.MINUTES);
+    Executor executor = mock(Executor.class);
+    table.register(node, executor);
+    assertTrue(table.get(node).iterator().hasNext());
+    table.unRegister(node, executor);
+    assertFalse(table.get(node).iterator().hasNext());
+    assertFalse(table.get(new Node(InetAddress.getLoopbackAddress(), 5001)).iterator().hasNext());
+  }
+
+  @Test
+  void expireStaleEntries() throws InterruptedException {
+    PendingResponseTable table = new PendingResponseTable(10, TimeUnit.MILLISECONDS);
+    Executor byId = mock(Executor.class);
+    Executor byNode = mock(Executor.class);
+    UUID id = UUID.randomUUID();
+    table.register(id, byId);
+    table.register(node, byNode);
+    assertEquals(0, table.expire());
+    Thread.sleep(50);
+    assertEquals(2, table.expire());
+    verify(byId).expire();
+    verify(byNode).expire();
+    assertNull(table.get(id));
+    assertEquals(0, table.size());
+  }
+}
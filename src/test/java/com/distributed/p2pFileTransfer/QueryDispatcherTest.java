@@ -8,11 +8,15 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -66,7 +70,7 @@ class QueryDispatcherTest {
             UUID id;
             String[] data = lastMessage.split(" ");
             if (data[1].equals("SER")) {
-              id = UUID.fromString(data[data.length - 1]);
+              id = UUID.fromString(data[5]);
             } else {
               id = UUID.randomUUID();
             }
@@ -230,4 +234,84 @@ class QueryDispatcherTest {
     assertNotNull(last);
     assertTrue(count <= queries.size() && count > 0);
   }
+
+  @Test
+  void dispatchAnyCancelsOutstanding()
+      throws ExecutionException, InterruptedException, TimeoutException {
+    Node silent = new Node(InetAddress.getLoopbackAddress(), socketListenerPort + 1);
+    String message = commandBuilder.getSearchCommand("Lord of the rings");
+    List<Query> queries =
+        Query.createQuery(Arrays.asList(message, message, message), silent);
+    queries.add(Query.createQuery(message, socketListener.toNode()));
+    QueryResult result =
+        queryDispatcher.dispatchAny(queries, each -> each.getState() == 0).get(5, TimeUnit.SECONDS);
+    assertEquals(socketListener.toNode(), result.query.destination);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (queryListener.getPendingResponseCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, queryListener.getPendingResponseCount());
+  }
+
+  @Test
+  void hedgeSlowDestination() throws Exception {
+    QueryDispatcher hedging = warmedUpDispatcher(new HedgeBudget(1, 10));
+    SocketListener backup = new SocketListener(socketListenerPort + 2);
+    Thread backupThread = new Thread(backup);
+    backupThread.start();
+    try {
+      Query query =
+          Query.createQuery(
+              commandBuilder.getSearchCommand("Lord of the rings"), socketListener.toNode());
+      QueryResult result =
+          hedging.dispatchHedged(query, backup::toNode).get(5, TimeUnit.SECONDS);
+      assertEquals(backup.toNode(), result.query.destination);
+      assertEquals(1, hedging.getHedgedCount());
+      long deadline = System.currentTimeMillis() + 5000;
+      while (queryListener.getPendingResponseCount() > 0
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, queryListener.getPendingResponseCount());
+    } finally {
+      backup.stop();
+      backupThread.join(10);
+    }
+  }
+
+  @Test
+  void hedgeBlockedByBudget() throws Exception {
+    QueryDispatcher hedging = warmedUpDispatcher(new HedgeBudget(0.01, 1));
+    Node backup = new Node(InetAddress.getLoopbackAddress(), socketListenerPort + 2);
+    Query query =
+        Query.createQuery(
+            commandBuilder.getSearchCommand("Lord of the rings"), socketListener.toNode());
+    CompletableFuture<QueryResult> result = hedging.dispatchHedged(query, () -> backup);
+    Thread.sleep(500);
+    assertFalse(result.isDone());
+    assertEquals(0, hedging.getHedgedCount());
+    result.cancel(false);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (queryListener.getPendingResponseCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, queryListener.getPendingResponseCount());
+  }
+
+  /**
+   * Create a dispatcher that learnt the answer times of the socket listener, then silence the
+   * socket listener so the next query to it is slow
+   */
+  private QueryDispatcher warmedUpDispatcher(HedgeBudget budget) throws Exception {
+    QueryDispatcher hedging = new QueryDispatcher(fileTransferService, budget);
+    for (int i = 0; i < LatencyHistory.MIN_SAMPLES; i++) {
+      Query query =
+          Query.createQuery(
+              commandBuilder.getSearchCommand("Lord of the rings"), socketListener.toNode());
+      assertEquals(0, hedging.dispatchHedged(query, () -> null).get(5, TimeUnit.SECONDS).getState());
+    }
+    socketListener.stop();
+    socketThread.join();
+    return hedging;
+  }
 }
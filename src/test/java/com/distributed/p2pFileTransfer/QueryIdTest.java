@@ -0,0 +1,30 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryIdTest {
+
+  @Test
+  void uniqueAcrossThreads() {
+    Set<UUID> ids = ConcurrentHashMap.newKeySet();
+    IntStream.range(0, 10000).parallel().forEach(i -> ids.add(QueryId.next()));
+    assertEquals(10000, ids.size());
+  }
+
+  @Test
+  void sharePrefixAndCount() {
+    UUID first = QueryId.next();
+    UUID second = QueryId.next();
+    assertEquals(first.getMostSignificantBits(), second.getMostSignificantBits());
+    assertTrue(second.getLeastSignificantBits() > first.getLeastSignificantBits());
+    assertEquals(8, first.version());
+    assertEquals(first, Message.parse("0000 SEROK 0 127.0.0.1 5000 " + first).getQueryId());
+  }
+}
@@ -10,7 +10,12 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -22,6 +27,7 @@ class QueryListenerTest {
     FileHandler fileHandler;
     QueryListener queryListener;
     Thread queryListenerThread;
+    Node receiver;
     final int QUERY_LISTENER_PORT = 7555;
     final int SENDER_PORT = 7556;
     @BeforeEach
@@ -32,6 +38,7 @@ class QueryListenerTest {
        queryListener = new QueryListener(fileTransferService, QUERY_LISTENER_PORT);
        queryListenerThread = new Thread(queryListener);
        queryListenerThread.start();
+       receiver = new Node(InetAddress.getLoopbackAddress(), QUERY_LISTENER_PORT);
     }
 
     @AfterEach
@@ -45,7 +52,6 @@ class QueryListenerTest {
         Executor executor = mock(Executor.class);
         DatagramSocket sender = new DatagramSocket(SENDER_PORT);
         Node senderNode =  new Node(InetAddress.getLoopbackAddress(), SENDER_PORT);
-        Node receiver = new Node(InetAddress.getLoopbackAddress(), QUERY_LISTENER_PORT);
         queryListener.registerForResponse(senderNode, executor);
         CommandBuilder commandBuilder = CommandBuilder.getInstance(senderNode);
         String message =
@@ -56,6 +62,153 @@ class QueryListenerTest {
         byte[] data = message.getBytes(StandardCharsets.UTF_8);
         DatagramPacket datagramPacket = new DatagramPacket(data, data.length, receiver.getSocketAddress());
         sender.send(datagramPacket);
-        verify(executor, timeout(5000).atLeastOnce()).notify(message);
+        verify(executor, timeout(5000).atLeastOnce()).notify(Message.parse(message));
     }
-}
\ No newline at end of file
+
+    @Test
+    void malformedDatagramsDropped() throws IOException {
+        Executor executor = mock(Executor.class);
+        Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 7);
+        queryListener.registerForResponse(senderNode, executor);
+        String message =
+                CommandBuilder.getInstance(senderNode)
+                        .getSearchOkCommand(Collections.singletonList("baby.mpeg"), UUID.randomUUID());
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 7)) {
+            for (byte[] data :
+                    Arrays.asList(
+                            new byte[] {(byte) 0x82, (byte) 0xFF},
+                            "0036 SEROK 1 127.0.0.1 7563 not-a-query-id".getBytes(StandardCharsets.UTF_8),
+                            message.getBytes(StandardCharsets.UTF_8))) {
+                sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            }
+            verify(executor, timeout(5000)).notify(Message.parse(message));
+        }
+    }
+
+    @Test
+    void registerForResponseById() throws IOException {
+        Executor expecting = mock(Executor.class);
+        Executor other = mock(Executor.class);
+        Node senderNode =  new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 1);
+        UUID queryId = UUID.randomUUID();
+        queryListener.registerForResponse(queryId, expecting);
+        queryListener.registerForResponse(senderNode, other);
+        String message =
+                CommandBuilder.getInstance(senderNode)
+                        .getSearchOkCommand(Stream.of("baby.mpeg").collect(Collectors.toList()), queryId);
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 1)) {
+            sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            verify(expecting, timeout(5000)).notify(Message.parse(message));
+            verify(other, after(200).never()).notify(Message.parse(message));
+        }
+    }
+
+    @Test
+    void searchSeenOnceAndHopLimited() throws IOException {
+        QueryDispatcher dispatcher = searchDispatcher();
+        Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 2);
+        UUID searchId = UUID.randomUUID();
+        CommandBuilder commandBuilder = CommandBuilder.getInstance(senderNode);
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 2)) {
+            for (int i = 0; i < 2; i++) {
+                byte[] data =
+                        Query.createQuery(commandBuilder.getSearchCommand("baby", 1, searchId), receiver)
+                                .body.getBytes(StandardCharsets.UTF_8);
+                sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            }
+            verify(dispatcher, timeout(5000)).dispatchOne(argThat(query -> query.body.contains(" SEROK 1 ")));
+            verify(dispatcher, timeout(5000)).dispatchOne(argThat(query -> query.body.contains(" SEROK 0 ")));
+            verify(fileTransferService, never()).searchForFileSkippingSource(any(), any(), anyInt(), any(), anyInt(), anyLong());
+        }
+    }
+
+    @Test
+    void directSearchAnsweredToOriginator() throws IOException {
+        QueryDispatcher dispatcher = searchDispatcher();
+        Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 4);
+        Node originator = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 5);
+        UUID searchId = UUID.randomUUID();
+        String search =
+                CommandBuilder.getInstance(originator).getSearchCommand("baby", 2, searchId, 0, 10000, true);
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 4)) {
+            for (int i = 0; i < 2; i++) {
+                byte[] data = Query.createQuery(search, receiver).body.getBytes(StandardCharsets.UTF_8);
+                sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            }
+            verify(dispatcher, timeout(5000)).dispatchOneWay(argThat(query ->
+                    query.destination.equals(originator)
+                            && query.body.contains(" SEROK 1 ")
+                            && query.body.contains(searchId.toString())));
+            verify(fileTransferService, timeout(5000)).forwardSearch(any(), eq(senderNode), eq(1), anyInt());
+            verify(dispatcher, after(200).never()).dispatchOne(any());
+            verify(dispatcher, times(1)).dispatchOneWay(any());
+        }
+    }
+
+    @Test
+    void searchNotForwardedWhenBudgetSpent() throws IOException {
+        QueryDispatcher dispatcher = searchDispatcher();
+        Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 3);
+        CommandBuilder commandBuilder = CommandBuilder.getInstance(senderNode);
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 3)) {
+            byte[] data =
+                    Query.createQuery(commandBuilder.getSearchCommand("baby", 3, UUID.randomUUID(), 0, 100), receiver)
+                            .body.getBytes(StandardCharsets.UTF_8);
+            sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            verify(dispatcher, timeout(5000)).dispatchOne(argThat(query -> query.body.contains(" SEROK 1 ")));
+            verify(fileTransferService, never()).searchForFileSkippingSource(any(), any(), anyInt(), any(), anyInt(), anyLong());
+        }
+    }
+
+    @Test
+    void searchForwardedWhileMoreThanMarginLeft() throws IOException {
+        searchDispatcher();
+        when(fileTransferService.searchForFileSkippingSource(any(), any(), anyInt(), any(), anyInt(), anyLong()))
+                .thenReturn(new CompletableFuture<>());
+        Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 8);
+        CommandBuilder commandBuilder = CommandBuilder.getInstance(senderNode);
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 8)) {
+            byte[] data =
+                    Query.createQuery(commandBuilder.getSearchCommand("baby", 3, UUID.randomUUID(), 0, 400), receiver)
+                            .body.getBytes(StandardCharsets.UTF_8);
+            sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            verify(fileTransferService, timeout(5000))
+                    .searchForFileSkippingSource(eq("baby"), eq(senderNode), eq(2), any(), anyInt(), anyLong());
+        }
+    }
+
+    @Test
+    void forwardedSearchAnsweredOnCompletion() throws IOException {
+        QueryDispatcher dispatcher = searchDispatcher();
+        Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + 6);
+        CompletableFuture<List<String>> neighbourFiles = new CompletableFuture<>();
+        when(fileTransferService.searchForFileSkippingSource(any(), any(), anyInt(), any(), anyInt(), anyLong()))
+                .thenReturn(neighbourFiles);
+        CommandBuilder commandBuilder = CommandBuilder.getInstance(senderNode);
+        try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + 6)) {
+            byte[] data =
+                    Query.createQuery(commandBuilder.getSearchCommand("baby", 2, UUID.randomUUID()), receiver)
+                            .body.getBytes(StandardCharsets.UTF_8);
+            sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+            verify(fileTransferService, timeout(5000))
+                    .searchForFileSkippingSource(eq("baby"), eq(senderNode), eq(1), any(), anyInt(), anyLong());
+            verify(dispatcher, after(200).never()).dispatchOne(any());
+            neighbourFiles.complete(Collections.singletonList("baby_one.mpeg"));
+            verify(dispatcher, timeout(5000)).dispatchOne(argThat(query -> query.body.contains(" SEROK 2 ")));
+        }
+    }
+
+    /**
+     * Mock the dispatcher of the service and have this node hold baby.mpeg, so searches can be
+     * handled and their answers checked
+     */
+    private QueryDispatcher searchDispatcher() {
+        QueryDispatcher dispatcher = mock(QueryDispatcher.class);
+        when(fileTransferService.getQueryDispatcher()).thenReturn(dispatcher);
+        when(fileTransferService.getCommandBuilder()).thenReturn(CommandBuilder.getInstance(receiver));
+        when(fileHandler.searchForFile("baby")).thenReturn(new ArrayList<>(Collections.singletonList("baby.mpeg")));
+        when(dispatcher.dispatchOne(any())).thenReturn(CompletableFuture.completedFuture(null));
+        return dispatcher;
+    }
+}
@@ -0,0 +1,65 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+  Node first = new Node(InetAddress.getLoopbackAddress(), 5000);
+  Node second = new Node(InetAddress.getLoopbackAddress(), 5001);
+
+  private RateLimiter searchLimit(double rate) {
+    Map<Command, Double> rates = new EnumMap<>(Command.class);
+    rates.put(Command.SER, rate);
+    return new RateLimiter(rates, 0);
+  }
+
+  @Test
+  void dropsBurstAboveRate() {
+    RateLimiter limiter = searchLimit(10);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(limiter.tryAcquire(first, Command.SER, 0));
+    }
+    assertFalse(limiter.tryAcquire(first, Command.SER, 0));
+    assertTrue(limiter.tryAcquire(second, Command.SER, 0));
+    assertTrue(limiter.tryAcquire(first, Command.JOIN, 0));
+    assertEquals(1, limiter.getDroppedCount());
+  }
+
+  @Test
+  void refillsOverTime() {
+    RateLimiter limiter = searchLimit(10);
+    for (int i = 0; i < 10; i++) {
+      limiter.tryAcquire(first, Command.SER, 0);
+    }
+    long tenthOfSecond = TimeUnit.MILLISECONDS.toNanos(100);
+    assertTrue(limiter.tryAcquire(first, Command.SER, tenthOfSecond));
+    assertFalse(limiter.tryAcquire(first, Command.SER, tenthOfSecond));
+  }
+
+  @Test
+  void admissionBeforeParsing() {
+    String search =
+        Query.createQuery(
+                CommandBuilder.getInstance(first).getSearchCommand("Lord of the rings"), first)
+            .body;
+    ByteBuffer datagram = ByteBuffer.wrap(search.getBytes(StandardCharsets.UTF_8));
+    assertEquals(Command.SER, BinaryCodec.peekCommand(datagram));
+    assertTrue(DatagramCoalescer.unpack(datagram.duplicate(), command -> false).isEmpty());
+    byte[] binary =
+        BinaryCodec.encode(
+            CommandBuilder.getInstance(first)
+                .getSearchOkCommand(Collections.singletonList("a"), UUID.randomUUID()));
+    assertEquals(Command.SEROK, BinaryCodec.peekCommand(ByteBuffer.wrap(binary)));
+    assertNull(BinaryCodec.peekCommand(ByteBuffer.wrap("0012 HELLO 1".getBytes())));
+  }
+}
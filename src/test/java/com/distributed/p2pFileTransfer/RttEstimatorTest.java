@@ -0,0 +1,45 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RttEstimatorTest {
+
+  @Test
+  void initialTimeout() {
+    RttEstimator estimator = new RttEstimator();
+    assertEquals(1000, estimator.getRetransmitTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(-1, estimator.getSmoothedRtt(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void firstSample() {
+    RttEstimator estimator = new RttEstimator();
+    estimator.sample(TimeUnit.MILLISECONDS.toNanos(200));
+    assertEquals(200, estimator.getSmoothedRtt(TimeUnit.MILLISECONDS));
+    assertEquals(600, estimator.getRetransmitTimeout(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void convergesOnStableRtt() {
+    RttEstimator estimator = new RttEstimator();
+    for (int i = 0; i < 100; i++) {
+      estimator.sample(TimeUnit.MILLISECONDS.toNanos(150));
+    }
+    assertEquals(150, estimator.getSmoothedRtt(TimeUnit.MILLISECONDS));
+    assertTrue(estimator.getRetransmitTimeout(TimeUnit.MILLISECONDS) < 200);
+  }
+
+  @Test
+  void boundedTimeout() {
+    RttEstimator fast = new RttEstimator();
+    fast.sample(TimeUnit.MICROSECONDS.toNanos(100));
+    assertEquals(100, fast.getRetransmitTimeout(TimeUnit.MILLISECONDS));
+    RttEstimator slow = new RttEstimator();
+    slow.sample(TimeUnit.SECONDS.toNanos(30));
+    assertEquals(10, slow.getRetransmitTimeout(TimeUnit.SECONDS));
+  }
+}
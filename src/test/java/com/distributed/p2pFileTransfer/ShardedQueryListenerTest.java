@@ -0,0 +1,82 @@
+package com.distributed.p2pFileTransfer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ShardedQueryListenerTest {
+  AbstractFileTransferService fileTransferService;
+  ShardedQueryListener queryListener;
+  Thread queryListenerThread;
+  final int QUERY_LISTENER_PORT = 7585;
+  final int SENDER_PORT = 7586;
+
+  @BeforeEach
+  void setUp() throws SocketException {
+    fileTransferService = mock(AbstractFileTransferService.class);
+    when(fileTransferService.getFileHandler()).thenReturn(mock(FileHandler.class));
+    queryListener = new ShardedQueryListener(fileTransferService, QUERY_LISTENER_PORT, 4);
+    queryListenerThread = new Thread(queryListener);
+    queryListenerThread.start();
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    this.queryListener.stop();
+    queryListenerThread.join(5000);
+  }
+
+  @Test
+  void registerForResponseAcrossShards() throws IOException {
+    Node receiver = new Node(InetAddress.getLoopbackAddress(), QUERY_LISTENER_PORT);
+    for (int i = 0; i < 8; i++) {
+      Executor executor = mock(Executor.class);
+      Node senderNode = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT + i);
+      UUID queryId = UUID.randomUUID();
+      queryListener.registerForResponse(queryId, executor);
+      String message =
+          CommandBuilder.getInstance(senderNode)
+              .getSearchOkCommand(Collections.singletonList("baby.mpeg"), queryId);
+      byte[] data = message.getBytes(StandardCharsets.UTF_8);
+      try (DatagramSocket sender = new DatagramSocket(SENDER_PORT + i)) {
+        sender.send(new DatagramPacket(data, data.length, receiver.getSocketAddress()));
+        verify(executor, timeout(5000)).notify(Message.parse(message));
+      }
+    }
+    assertEquals(8, queryListener.getQueryCount());
+  }
+
+  @Test
+  void replyFromListenerPort() throws IOException, ExecutionException, InterruptedException {
+    Node receiver = new Node(InetAddress.getLoopbackAddress(), SENDER_PORT);
+    String message = CommandBuilder.getInstance(receiver).getJoinOkCommand();
+    try (DatagramSocket listener = new DatagramSocket(SENDER_PORT)) {
+      listener.setSoTimeout(5000);
+      Query query = Query.createQuery(message, receiver);
+      UnAcknowledgedQueryExecutor executor =
+          new UnAcknowledgedQueryExecutor(query, queryListener.getSocket(), queryListener);
+      QueryResult result = Executors.newSingleThreadExecutor().submit(executor).get();
+      assertEquals(0, result.getState());
+
+      byte[] buffer = new byte[1024];
+      DatagramPacket incoming = new DatagramPacket(buffer, buffer.length);
+      listener.receive(incoming);
+      assertEquals(message, new String(buffer, 0, incoming.getLength(), StandardCharsets.UTF_8));
+      assertEquals(QUERY_LISTENER_PORT, incoming.getPort());
+    }
+  }
+}